@@ -26,10 +26,3 @@ public class Action {
         }
     }
 }
-
-/**
- * Enumeration of turtle action types.
- */
-enum ActionType {
-    FORWARD, TURN, COLOR
-}
@@ -0,0 +1,119 @@
+/**
+ * This class stores a growable sequence of turtle actions as parallel arrays of primitives: the ActionType
+ * ordinal of each action, its argument (the steps of a forward, the degrees of a turn, or the ordinal of the
+ * new PenColor), and for a forward, the index of its line segment in a SegmentStore. Action objects and
+ * their display strings are only created when an action is read through get() or the asList() view.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ActionStore {
+	
+	private static final ActionType[] TYPES = ActionType.values();
+	private static final PenColor[] COLORS = PenColor.values();
+	
+	byte[] type;
+	double[] argument;
+	int[] segment;
+	int size;
+	
+	private final SegmentStore segments;
+	
+	/**
+	 * Creates a new, empty ActionStore object whose forward actions refer to segments in the given store
+	 * @param segments The store that holds the segments of forward actions
+	 */
+	public ActionStore(SegmentStore segments) {
+		this.segments = segments;
+		type = new byte[16];
+		argument = new double[16];
+		segment = new int[16];
+	}
+	
+	/**
+	 * Adds an action to the end of the store.
+	 * @param actionType The type of the action
+	 * @param actionArgument The steps, degrees or PenColor ordinal of the action
+	 * @param segmentIndex The index of the action's segment, or -1 if it has none
+	 */
+	public void add(ActionType actionType, double actionArgument, int segmentIndex) {
+		ensureCapacity(size + 1);
+		type[size] = (byte) actionType.ordinal();
+		argument[size] = actionArgument;
+		segment[size] = segmentIndex;
+		size++;
+	}
+	
+	/**
+	 * Makes sure the store has room for the given number of actions without growing again.
+	 * @param capacity The number of actions to make room for
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > type.length) {
+			int newCapacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(capacity, type.length * 2L));
+			type = Arrays.copyOf(type, newCapacity);
+			argument = Arrays.copyOf(argument, newCapacity);
+			segment = Arrays.copyOf(segment, newCapacity);
+		}
+	}
+	
+	/**
+	 * Removes all of the actions from the store, keeping its arrays for reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public ActionType type(int i) {
+		return TYPES[type[i]];
+	}
+	
+	/**
+	 * Creates an Action for an action in the store, along with its display string and line segment.
+	 * @param i The index of the action
+	 * @return A new Action describing the action
+	 */
+	public Action get(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+		switch (TYPES[type[i]]) {
+		case FORWARD:
+			return new Action(ActionType.FORWARD, "forward " + (int) argument[i] + " steps", segments.get(segment[i]));
+		case TURN:
+			return new Action(ActionType.TURN, "turn " + argument[i] + " degrees", null);
+		default:
+			return new Action(ActionType.COLOR,
+					"change to " + COLORS[(int) argument[i]].toString().toLowerCase(), null);
+		}
+	}
+	
+	/**
+	 * Returns a read-only list view of the store, which creates an Action each time an element is read.
+	 * @return A list of the actions in the store
+	 */
+	public List<Action> asList() {
+		return new AbstractList<Action>() {
+			@Override
+			public Action get(int index) {
+				return ActionStore.this.get(index);
+			}
+			
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+}
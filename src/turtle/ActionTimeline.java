@@ -0,0 +1,101 @@
+/**
+ * This class indexes a list of turtle actions by how far into the drawing they are, so that an animation can
+ * find the action it has reached at any moment, and jump to any action, without walking the list. It is built
+ * once, in a single pass over the actions, and stores two prefix sums: the animation length of all the actions
+ * before each action (a forward takes up its length and a turn a fixed length), and the number of line segments
+ * they drew.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.util.List;
+
+public class ActionTimeline {
+
+	private final double[] lengthBefore;
+	private final int[] segmentsBefore;
+
+	/**
+	 * Creates a new ActionTimeline object for a list of actions
+	 * @param actions The actions of the drawing, in order
+	 * @param turnLength The length of the animation a turn takes up
+	 */
+	public ActionTimeline(List<Action> actions, double turnLength) {
+		int size = actions.size();
+		lengthBefore = new double[size + 1];
+		segmentsBefore = new int[size + 1];
+		for (int i = 0; i < size; i++) {
+			Action action = actions.get(i);
+			double length = 0;
+			if (action.type == ActionType.TURN) {
+				length = turnLength;
+			} else if (action.type == ActionType.FORWARD) {
+				length = action.lineSeg.length();
+			}
+			lengthBefore[i + 1] = lengthBefore[i] + length;
+			segmentsBefore[i + 1] = segmentsBefore[i] + (action.lineSeg != null ? 1 : 0);
+		}
+	}
+
+	/**
+	 * @return The number of actions in the timeline
+	 */
+	public int size() {
+		return lengthBefore.length - 1;
+	}
+
+	/**
+	 * @return The length of the animation of all the actions
+	 */
+	public double getTotalLength() {
+		return lengthBefore[size()];
+	}
+
+	/**
+	 * @param action The index of an action, or size() for the end of the drawing
+	 * @return The length of the animation of the actions before it
+	 */
+	public double lengthBefore(int action) {
+		return lengthBefore[action];
+	}
+
+	/**
+	 * @param action The index of an action, or size() for the end of the drawing
+	 * @return The number of line segments drawn by the actions before it, which is the index of its own
+	 * segment if it is a forward
+	 */
+	public int segmentsBefore(int action) {
+		return segmentsBefore[action];
+	}
+
+	/**
+	 * @param action The index of an action
+	 * @return True if the action draws a line segment
+	 */
+	public boolean drawsSegment(int action) {
+		return segmentsBefore[action + 1] > segmentsBefore[action];
+	}
+
+	/**
+	 * Finds how many actions are finished once a length of the animation has been played, by a binary search.
+	 * @param length The length of the animation that has been played
+	 * @return The number of actions whose animation ends within that length, which is the index of the action
+	 * being animated, or size() if they are all finished
+	 */
+	public int actionsWithin(double length) {
+		int low = 0;
+		int high = size();
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (lengthBefore[middle] <= length) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+}
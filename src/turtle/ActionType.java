@@ -0,0 +1,11 @@
+/* Copyright (c) 2007-2014 MIT 6.005 course staff, all rights reserved.
+ * Redistribution of original or derived work requires permission of course staff.
+ */
+package turtle;
+
+/**
+ * Enumeration of turtle action types.
+ */
+enum ActionType {
+    FORWARD, TURN, COLOR
+}
@@ -0,0 +1,70 @@
+/**
+ * This class is a compact node of the Abstract Syntax Tree of a Turtle Graphics program. Unlike GrammarNode,
+ * it only has nodes for the program, loops and commands: the operand of a command is stored in the node itself,
+ * as either a number or the id of a variable in the program's SymbolTable, and keywords such as begin, end and =
+ * are not stored at all. Leaves share a single empty child array.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+import java.util.Arrays;
+
+public class AstNode {
+	
+	/**
+	 * Value of variable for nodes whose operand is a number
+	 */
+	public static final int NO_VARIABLE = -1;
+	
+	static final AstNode[] NO_CHILDREN = new AstNode[0];
+	
+	public final NodeKind kind;
+	public final int variable;
+	public final int number;
+	public final AstNode[] children;
+	
+	/**
+	 * Constructs a new AstNode object. For loops and commands, the operand is the variable if it is not
+	 * NO_VARIABLE, and the number otherwise. For assignments, the variable is the one being assigned and
+	 * the number is its new value.
+	 * @param kind The kind of node
+	 * @param variable The id of the variable the node refers to, or NO_VARIABLE
+	 * @param number The number the node refers to
+	 * @param children The statements of a program or loop body, or NO_CHILDREN for commands
+	 */
+	public AstNode(NodeKind kind, int variable, int number, AstNode[] children) {
+		this.kind = kind;
+		this.variable = variable;
+		this.number = number;
+		this.children = children;
+	}
+	
+	/**
+	 * Checks whether the operand of this loop or command is a variable
+	 * @return True if the operand is a variable, false if it is a number
+	 */
+	public boolean hasVariable() {
+		return variable != NO_VARIABLE;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		AstNode other = (AstNode) obj;
+		return kind == other.kind && variable == other.variable && number == other.number
+				&& Arrays.equals(children, other.children);
+	}
+	
+	@Override
+	public int hashCode() {
+		return ((kind.hashCode() * 31 + variable) * 31 + number) * 31 + Arrays.hashCode(children);
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * This class is a SegmentSink that passes batches of segments on to another sink on a separate thread, so that
+ * running a program and consuming its segments happen at the same time. Only a fixed number of batches can be
+ * waiting at once: when they are all full, accept() blocks until the consumer catches up, so memory use stays
+ * the same however many segments the program produces.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class AsyncSegmentSink implements SegmentSink {
+	
+	// a batch with no arrays, used to tell the consumer that there are no more batches
+	private static final SegmentStore END = new SegmentStore(0);
+	
+	private final SegmentSink target;
+	private final BlockingQueue<SegmentStore> free;
+	private final BlockingQueue<SegmentStore> full;
+	private final Thread consumer;
+	private volatile Throwable failure;
+	
+	/**
+	 * Creates a new AsyncSegmentSink object that passes segments on to the given sink on a new thread
+	 * @param target The sink that consumes the segments
+	 * @param buffers The number of batches that can be waiting for the consumer at once
+	 */
+	public AsyncSegmentSink(SegmentSink target, int buffers) {
+		this.target = target;
+		this.free = new ArrayBlockingQueue<SegmentStore>(buffers);
+		this.full = new ArrayBlockingQueue<SegmentStore>(buffers + 1);
+		for (int i = 0; i < buffers; i++) {
+			free.add(new SegmentStore());
+		}
+		this.consumer = new Thread(this::consume, "AsyncSegmentSink");
+		this.consumer.setDaemon(true);
+		this.consumer.start();
+	}
+	
+	@Override
+	public void accept(SegmentStore batch) {
+		checkFailure();
+		SegmentStore buffer = take(free);
+		buffer.clear();
+		buffer.addAll(batch);
+		put(full, buffer);
+	}
+	
+	@Override
+	public void close() {
+		try {
+			put(full, END);
+			try {
+				consumer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for segments to be consumed", e);
+			}
+			checkFailure();
+		} finally {
+			// the target may hold a file open, so it is closed even if consuming the segments failed
+			target.close();
+		}
+	}
+	
+	/**
+	 * Helper method run by the consumer thread, which passes full batches on to the target sink until it is told to stop.
+	 */
+	private void consume() {
+		while (true) {
+			SegmentStore batch = take(full);
+			if (batch == END) {
+				return;
+			}
+			if (failure == null) {
+				try {
+					target.accept(batch);
+				} catch (Throwable e) {
+					// keep taking batches, so that the producer is never left waiting for a free one
+					failure = e;
+				}
+			}
+			put(free, batch);
+		}
+	}
+	
+	/**
+	 * Helper method that rethrows, on the producing thread, an exception or error thrown by the target sink.
+	 */
+	private void checkFailure() {
+		Throwable failure = this.failure;
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		} else if (failure instanceof Error) {
+			throw (Error) failure;
+		} else if (failure != null) {
+			throw new IllegalStateException("Consuming segments failed", failure);
+		}
+	}
+	
+	private static SegmentStore take(BlockingQueue<SegmentStore> queue) {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a batch of segments", e);
+		}
+	}
+	
+	private static void put(BlockingQueue<SegmentStore> queue, SegmentStore batch) {
+		try {
+			queue.put(batch);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a batch of segments", e);
+		}
+	}
+}
@@ -0,0 +1,419 @@
+/**
+ * This class keeps compiled programs so that a program that is submitted again is not lexed, parsed and compiled
+ * again. Programs are identified by the SHA-256 hash of their source, so the same program is found whatever file
+ * it comes from, and a file that has changed is compiled again. Programs compiled by an engine that optimizes them
+ * are kept apart from those compiled by one that does not.
+ *
+ * At most a fixed number of programs are kept in memory; when there are more, the one used least recently is
+ * dropped. If the cache is given a directory, every program it compiles is also saved there in a compact binary
+ * form, and a program that is not in memory is loaded from the directory before it is compiled again, so the
+ * cache outlives the virtual machine. The cache can be shared by several threads.
+ *
+ * A saved program is a file named after the hash, made of the magic number, the format version, the loop depth,
+ * the number of variables and their names, the number of instruction words followed by the words, and then 0 for
+ * a program compiled as written, or 1 followed by the numbers of the optimizer's report. Every number is written
+ * as an unsigned variable-length integer, seven bits per byte, lowest bits first.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class CompileCache {
+
+	private static final int MAGIC = 0x54504331; // "TPC1"
+	private static final int VERSION = 2;
+	private static final String SUFFIX = ".tpc";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final int capacity;
+	private final File directory;
+	private final LinkedHashMap<String, CompiledProgram> programs;
+
+	private long hits = 0;
+	private long diskHits = 0;
+	private long misses = 0;
+	private long saveFailures = 0;
+
+	/**
+	 * Creates a new CompileCache object that keeps programs in memory only
+	 * @param capacity The number of programs to keep in memory
+	 */
+	public CompileCache(int capacity) {
+		this(capacity, null);
+	}
+
+	/**
+	 * Creates a new CompileCache object that keeps programs in memory and saves them in a directory
+	 * @param capacity The number of programs to keep in memory
+	 * @param directory The directory to save programs in, which is created if it does not exist, or null to
+	 *        keep programs in memory only
+	 */
+	public CompileCache(int capacity, String directory) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.directory = directory == null ? null : new File(directory);
+		if (this.directory != null) {
+			this.directory.mkdirs();
+		}
+		// an access-ordered map iterates from the least recently used program to the most recently used one
+		this.programs = new LinkedHashMap<String, CompiledProgram>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompiledProgram> eldest) {
+				return size() > CompileCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the compiled form of a turtle program, from the cache if it is there, and otherwise by having the
+	 * engine parse it and then compiling it and adding it to the cache.
+	 * @param file The file that contains the turtle program
+	 * @param engine The engine that parses the program if it is not in the cache
+	 * @return The compiled program
+	 * @throws IllegalArgumentException if the program contains a syntax error, with the error as its message
+	 * @throws UncheckedIOException if the file cannot be read
+	 */
+	CompiledProgram compile(String file, TurtleEngine engine) {
+		byte[] source = read(file);
+		// an optimized program is kept apart from the program as written
+		String key = engine.isOptimizing() ? hash(source) + "-optimized" : hash(source);
+
+		CompiledProgram program;
+		synchronized (this) {
+			program = programs.get(key);
+			if (program != null) {
+				hits++;
+				return program;
+			}
+		}
+
+		program = load(key);
+		if (program != null) {
+			synchronized (this) {
+				diskHits++;
+				programs.put(key, program);
+			}
+			return program;
+		}
+
+		program = engine.compile(engine.parse(new MappedTurtleLexer(ByteBuffer.wrap(source))));
+		synchronized (this) {
+			misses++;
+			programs.put(key, program);
+		}
+		save(key, program);
+		return program;
+	}
+
+	/**
+	 * @return The number of programs found in memory
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of programs that were not in memory but were loaded from the directory
+	 */
+	public synchronized long getDiskHits() {
+		return diskHits;
+	}
+
+	/**
+	 * @return The number of programs that had to be parsed and compiled
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return The number of programs that could not be saved in the directory
+	 */
+	public synchronized long getSaveFailures() {
+		return saveFailures;
+	}
+
+	/**
+	 * @return The number of programs kept in memory
+	 */
+	public synchronized int size() {
+		return programs.size();
+	}
+
+	/**
+	 * Drops every program kept in memory. Programs saved in the directory are kept.
+	 */
+	public synchronized void clear() {
+		programs.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return hits + " hits, " + diskHits + " disk hits, " + misses + " misses, " + saveFailures + " failed saves, " + programs.size() + " programs in memory";
+	}
+
+	/**
+	 * Helper method that reads the whole of a file.
+	 * @throws UncheckedIOException if the file cannot be read, as MappedTurtleLexer does
+	 */
+	private static byte[] read(String file) {
+		try {
+			return Files.readAllBytes(Paths.get(file));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Helper method that returns the SHA-256 hash of a program's source, in hexadecimal.
+	 */
+	static String hash(byte[] source) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(source);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+		char[] hex = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; i++) {
+			hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Helper method that loads a program saved in the directory.
+	 * @return The program, or null if there is no directory, the program is not saved, or its file is damaged
+	 */
+	private CompiledProgram load(String key) {
+		if (directory == null) {
+			return null;
+		}
+		File file = new File(directory, key + SUFFIX);
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			return readProgram(Files.readAllBytes(file.toPath()));
+		} catch (IOException | RuntimeException e) {
+			// a damaged or outdated file is treated as missing, and replaced when the program is saved again
+			return null;
+		}
+	}
+
+	/**
+	 * Helper method that saves a program in the directory. The program is written to a temporary file that is
+	 * then renamed, so that other threads and processes never see a partly written file. A program that cannot be
+	 * saved is only counted: it is still compiled, and is compiled again the next time it is not in memory.
+	 */
+	private void save(String key, CompiledProgram program) {
+		if (directory == null) {
+			return;
+		}
+		File temporary = null;
+		try {
+			temporary = File.createTempFile(key, ".tmp", directory);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+				writeProgram(out, program);
+			}
+			Files.move(temporary.toPath(), new File(directory, key + SUFFIX).toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			if (temporary != null) {
+				temporary.delete();
+			}
+			synchronized (this) {
+				saveFailures++;
+			}
+		}
+	}
+
+	static void writeProgram(DataOutputStream out, CompiledProgram program) throws IOException {
+		out.writeInt(MAGIC);
+		writeNumber(out, VERSION);
+		writeNumber(out, program.loopDepth);
+		writeNumber(out, program.variableNames.length);
+		for (String name : program.variableNames) {
+			out.writeUTF(name);
+		}
+		writeNumber(out, program.code.length);
+		for (int word : program.code) {
+			writeNumber(out, word);
+		}
+		TurtleOptimizer.Report report = program.report;
+		if (report == null) {
+			writeNumber(out, 0);
+		} else {
+			writeNumber(out, 1);
+			int[] counts = {report.instructionsBefore, report.instructionsAfter, report.constantsPropagated,
+					report.assignmentsRemoved, report.turnsFolded, report.noOpTurnsRemoved, report.forwardsMerged,
+					report.loopsRemoved};
+			for (int count : counts) {
+				writeNumber(out, count);
+			}
+		}
+	}
+
+	/**
+	 * Reads a program written by writeProgram(). Nothing in the data is trusted: every count is checked against
+	 * the number of bytes left before anything is allocated, and the instructions are checked before the program
+	 * is returned, so that damaged data can never make the interpreter jump or index out of bounds.
+	 * @param data The whole of a saved program
+	 * @return The program
+	 * @throws IOException if the data is not a valid compiled program
+	 */
+	static CompiledProgram readProgram(byte[] data) throws IOException {
+		ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+		DataInputStream in = new DataInputStream(bytes);
+		if (in.readInt() != MAGIC || readNumber(in) != VERSION) {
+			throw new IOException("Not a compiled turtle program");
+		}
+		int loopDepth = readNumber(in);
+		// every name takes at least the two bytes of its length, and every instruction word at least one byte
+		String[] variableNames = new String[readCount(in, bytes.available() / 2)];
+		for (int i = 0; i < variableNames.length; i++) {
+			variableNames[i] = in.readUTF();
+		}
+		int[] code = new int[readCount(in, bytes.available())];
+		for (int i = 0; i < code.length; i++) {
+			code[i] = readNumber(in);
+		}
+		TurtleOptimizer.Report report = null;
+		int optimized = readNumber(in);
+		if (optimized == 1) {
+			report = new TurtleOptimizer.Report(readNumber(in), readNumber(in), readNumber(in), readNumber(in),
+					readNumber(in), readNumber(in), readNumber(in), readNumber(in));
+		} else if (optimized != 0) {
+			throw new IOException("Invalid optimizer report");
+		}
+		if (in.read() != -1) {
+			throw new IOException("Unexpected data after the program");
+		}
+		checkCode(code, variableNames.length, loopDepth);
+		return new CompiledProgram(code, variableNames, loopDepth, report);
+	}
+
+	/**
+	 * Helper method that reads a count and checks that it is between 0 and the given maximum.
+	 */
+	private static int readCount(InputStream in, int maximum) throws IOException {
+		int count = readNumber(in);
+		if (count < 0 || count > maximum) {
+			throw new IOException("Invalid count " + count);
+		}
+		return count;
+	}
+
+	/**
+	 * Helper method that checks that instructions are laid out as TurtleCompiler lays them out: every opcode is
+	 * known and its operands are inside the program, every variable id is one of the program's variables, every
+	 * loop is closed by a NEXT instruction that jumps back to the start of its body and is exactly where the
+	 * loop's exit index says, and every loop uses the counter of its nesting depth, the deepest of which is
+	 * the program's loop depth.
+	 * @throws IOException if the instructions are not valid
+	 */
+	static void checkCode(int[] code, int variables, int loopDepth) throws IOException {
+		if (loopDepth < 0) {
+			throw new IOException("Invalid loop depth " + loopDepth);
+		}
+		int[] loops = new int[Math.min(loopDepth, code.length / 4) + 1];
+		int depth = 0;
+		int maxDepth = 0;
+		int pc = 0;
+		while (pc < code.length) {
+			int opcode = code[pc];
+			if (opcode < CompiledProgram.FORWARD_NUMBER || opcode > CompiledProgram.NEXT
+					|| CompiledProgram.length(opcode) > code.length - pc) {
+				throw new IOException("Invalid instruction at " + pc);
+			}
+			switch (opcode) {
+			case CompiledProgram.FORWARD_VARIABLE:
+			case CompiledProgram.TURN_VARIABLE:
+			case CompiledProgram.ASSIGN:
+			case CompiledProgram.LOOP_VARIABLE:
+				if (code[pc + 1] < 0 || code[pc + 1] >= variables) {
+					throw new IOException("Invalid variable at " + pc);
+				}
+				break;
+			default:
+				break;
+			}
+			if (opcode == CompiledProgram.LOOP_NUMBER || opcode == CompiledProgram.LOOP_VARIABLE) {
+				if (code[pc + 3] != depth || depth == loops.length - 1 || code[pc + 2] <= pc + 4
+						|| code[pc + 2] > code.length) {
+					throw new IOException("Invalid loop at " + pc);
+				}
+				loops[depth++] = pc;
+				maxDepth = Math.max(maxDepth, depth);
+			} else if (opcode == CompiledProgram.NEXT) {
+				if (depth == 0) {
+					throw new IOException("Invalid loop end at " + pc);
+				}
+				int loop = loops[--depth];
+				if (code[pc + 1] != depth || code[pc + 2] != loop + 4
+						|| code[loop + 2] != pc + CompiledProgram.length(CompiledProgram.NEXT)) {
+					throw new IOException("Invalid loop end at " + pc);
+				}
+			}
+			pc += CompiledProgram.length(opcode);
+		}
+		if (depth != 0 || maxDepth != loopDepth) {
+			throw new IOException("Invalid loop depth " + loopDepth);
+		}
+	}
+
+	/**
+	 * Helper method that writes an int as an unsigned variable-length number. All the numbers in a compiled
+	 * program are at least 0, and most are small, so they usually take one or two bytes.
+	 */
+	private static void writeNumber(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static int readNumber(InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Number too long");
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * This class holds a Turtle Graphics program that has been compiled by TurtleCompiler into a flat array of
+ * instructions. Each instruction is an opcode followed by its operands. Variables are referred to by the ids
+ * they were given in the program's SymbolTable. A loop is run in place: its LOOP instruction sets a loop counter
+ * and its NEXT instruction jumps back to the start of the body until the counter runs out, so no part of the
+ * program is ever copied. Each loop uses the counter of its nesting depth, so nested loops never share a counter.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+public class CompiledProgram {
+	
+	/** FORWARD_NUMBER distance: moves the turtle forward by a constant distance */
+	public static final int FORWARD_NUMBER = 0;
+	/** FORWARD_VARIABLE variable: moves the turtle forward by the value of a variable */
+	public static final int FORWARD_VARIABLE = 1;
+	/** TURN_NUMBER angle: turns the turtle by a constant angle */
+	public static final int TURN_NUMBER = 2;
+	/** TURN_VARIABLE variable: turns the turtle by the value of a variable */
+	public static final int TURN_VARIABLE = 3;
+	/** ASSIGN variable value: sets a variable to a constant value */
+	public static final int ASSIGN = 4;
+	/** LOOP_NUMBER count exit counter: starts a loop that runs a constant number of times, jumping to exit if it runs 0 times */
+	public static final int LOOP_NUMBER = 5;
+	/** LOOP_VARIABLE variable exit counter: starts a loop that runs as many times as the value of a variable */
+	public static final int LOOP_VARIABLE = 6;
+	/** NEXT counter body: counts down a loop counter, and jumps back to index body if the loop has more iterations */
+	public static final int NEXT = 7;
+	
+	public final int[] code;
+	public final String[] variableNames;
+	public final int loopDepth;
+	/** What optimizing the program removed, or null if it was compiled as written */
+	public final TurtleOptimizer.Report report;
+	
+	/**
+	 * Constructs a new CompiledProgram object.
+	 * @param code The instructions of the program
+	 * @param variableNames The names of the variables, indexed by their ids
+	 * @param loopDepth The deepest nesting of loops in the program, which is the number of loop counters it needs
+	 */
+	public CompiledProgram(int[] code, String[] variableNames, int loopDepth) {
+		this(code, variableNames, loopDepth, null);
+	}
+	
+	/**
+	 * Constructs a new CompiledProgram object for a program that was optimized before it was compiled.
+	 * @param code The instructions of the program
+	 * @param variableNames The names of the variables, indexed by their ids
+	 * @param loopDepth The deepest nesting of loops in the program, which is the number of loop counters it needs
+	 * @param report What optimizing the program removed, or null if it was compiled as written
+	 */
+	public CompiledProgram(int[] code, String[] variableNames, int loopDepth, TurtleOptimizer.Report report) {
+		this.code = code;
+		this.variableNames = variableNames;
+		this.loopDepth = loopDepth;
+		this.report = report;
+	}
+	
+	/**
+	 * Returns the number of ints taken up by the instruction with the given opcode, including the opcode itself.
+	 * @param opcode The opcode of the instruction
+	 * @return The length of the instruction
+	 */
+	public static int length(int opcode) {
+		switch (opcode) {
+		case LOOP_NUMBER:
+		case LOOP_VARIABLE:
+			return 4;
+		case ASSIGN:
+		case NEXT:
+			return 3;
+		default:
+			return 2;
+		}
+	}
+}
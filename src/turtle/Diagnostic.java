@@ -0,0 +1,43 @@
+/**
+ * This class describes one syntax error found in a Turtle Graphics program: what the error is, and where it is.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+public class Diagnostic {
+
+	/** The message describing the error, worded as TurtleParser prints it */
+	public final String message;
+	/** The offset in bytes of the token the error is about, from the start of the program */
+	public final int offset;
+	/** The length in bytes of the token, or 0 if the error is about the end of the program */
+	public final int length;
+	/** The line the token is on, counting from 1 */
+	public final int line;
+	/** The column the token starts at, counting from 1 */
+	public final int column;
+
+	/**
+	 * Creates a new Diagnostic object
+	 * @param message The message describing the error
+	 * @param offset The offset of the token the error is about
+	 * @param length The length of the token
+	 * @param line The line the token is on
+	 * @param column The column the token starts at
+	 */
+	public Diagnostic(String message, int offset, int length, int line, int column) {
+		this.message = message;
+		this.offset = offset;
+		this.length = length;
+		this.line = line;
+		this.column = column;
+	}
+
+	@Override
+	public String toString() {
+		return line + ":" + column + ": " + message;
+	}
+}
@@ -3,65 +3,575 @@
  */
 package turtle;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.swing.SwingUtilities;
 
 /**
  * Turtle for drawing in a window on the screen.
+ * 
+ * The actions and line segments the turtle produces are kept in an ActionStore and a
+ * SegmentStore, as arrays of primitives. actionList and lines are read-only views of
+ * them that create Action and LineSegment objects only when an element is read.
+ * 
+ * A turtle made with a SegmentSink streams its drawing instead: it keeps no actions,
+ * and passes its segments to the sink in batches of BATCH_SIZE, so its memory use does
+ * not grow with the number of segments. Call finish() once the program has run.
  */
 public class DrawableTurtle implements Turtle {
 
+    final SegmentStore segments;
+    final ActionStore actions;
+    private final SegmentSink sink;
+
+    /**
+     * Number of actions a turtle may record before a RecordingLimitException is thrown.
+     */
+    int recordingLimit = Integer.MAX_VALUE;
+
     List<Action> actionList;
     List<LineSegment> lines;
 
-    Point currentPosition;
+    double currentX;
+    double currentY;
     double currentHeading;
+
+    // the unit vector the turtle moves along, kept up to date with currentHeading by setHeading()
+    private double directionX;
+    private double directionY;
     PenColor currentColor;
 
-    private static final int canvasWidth = 512;
-    private static final int canvasHeight = 512;
+    static final int canvasWidth = 512;
+    static final int canvasHeight = 512;
+
+    /**
+     * Number of segments a streaming turtle collects before passing them to its sink.
+     */
+    static final int BATCH_SIZE = 8192;
+
+    /**
+     * Number of actions a turtle recording a loop body may record, before it is better to run the loop directly.
+     */
+    static final int RECORDING_LIMIT = 1 << 20;
+
+    /**
+     * Number of actions that repeating a loop body must produce before it is worth doing in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 14;
+
+    /**
+     * The direction the turtle moves in for each whole-degree heading. The entries are computed with the
+     * same expression forward() used to evaluate on every step, so using them gives exactly the same results.
+     */
+    private static final double[] DIRECTION_X = new double[360];
+    private static final double[] DIRECTION_Y = new double[360];
+
+    static {
+        for (int heading = 0; heading < 360; heading++) {
+            DIRECTION_X[heading] = Math.cos(Math.toRadians(90.0 - heading));
+            DIRECTION_Y[heading] = Math.sin(Math.toRadians(90.0 - heading));
+        }
+    }
 
     public DrawableTurtle() {
-        this.currentPosition = new Point(0, 0);
-        this.currentHeading = 0.0;
+        this.currentX = 0;
+        this.currentY = 0;
+        setHeading(0.0);
+        this.currentColor = PenColor.BLACK;
+        this.segments = new SegmentStore();
+        this.actions = new ActionStore(segments);
+        this.lines = segments.asList();
+        this.actionList = actions.asList();
+        this.sink = null;
+    }
+
+    /**
+     * Make a turtle that streams its segments to a sink instead of keeping them.
+     * 
+     * @param sink the sink that consumes the segments
+     */
+    public DrawableTurtle(SegmentSink sink) {
+        this.currentX = 0;
+        this.currentY = 0;
+        setHeading(0.0);
         this.currentColor = PenColor.BLACK;
-        this.lines = new ArrayList<>();
-        this.actionList = new ArrayList<>();
+        this.segments = new SegmentStore(BATCH_SIZE);
+        this.actions = null;
+        this.sink = sink;
     }
 
     public void forward(int steps) {
-        double newX = currentPosition.x + Math.cos(Math.toRadians(90.0 - currentHeading)) * (double)steps;
-        double newY = currentPosition.y + Math.sin(Math.toRadians(90.0 - currentHeading)) * (double)steps;
+        double newX = currentX + directionX * (double)steps;
+        double newY = currentY + directionY * (double)steps;
 
-        LineSegment lineSeg = new LineSegment(currentPosition.x, currentPosition.y, newX, newY, currentColor);
-        this.lines.add(lineSeg);
-        this.currentPosition = new Point(newX, newY);
+        record(ActionType.FORWARD, steps, segments.size());
+        this.segments.add(currentX, currentY, newX, newY, currentColor);
+        this.currentX = newX;
+        this.currentY = newY;
 
-        this.actionList.add(new Action(ActionType.FORWARD, "forward " + steps + " steps", lineSeg));
+        if (sink != null && segments.size() >= BATCH_SIZE) {
+            flush();
+        }
     }
 
     public void turn(double degrees) {
         degrees = (degrees % 360 + 360) % 360;
-        this.currentHeading += degrees;
-        if (this.currentHeading >= 360.0)
-            this.currentHeading -= 360.0;
-        this.actionList.add(new Action(ActionType.TURN, "turn " + degrees + " degrees", null));
+        double heading = currentHeading + degrees;
+        if (heading >= 360.0)
+            heading -= 360.0;
+        setHeading(heading);
+        record(ActionType.TURN, degrees, -1);
+    }
+
+    /**
+     * Point the turtle in a new direction, looking up the direction it moves in if the heading is a whole number
+     * of degrees and computing it otherwise.
+     * 
+     * @param heading the new heading, in degrees clockwise from the positive y direction, in [0,360)
+     */
+    private void setHeading(double heading) {
+        this.currentHeading = heading;
+        int whole = (int) heading;
+        if (whole == heading && whole >= 0 && whole < 360) {
+            this.directionX = DIRECTION_X[whole];
+            this.directionY = DIRECTION_Y[whole];
+        } else {
+            this.directionX = Math.cos(Math.toRadians(90.0 - heading));
+            this.directionY = Math.sin(Math.toRadians(90.0 - heading));
+        }
     }
 
     public void color(PenColor color) {
         this.currentColor = color;
-        this.actionList.add(new Action(ActionType.COLOR, "change to " + color.toString().toLowerCase(), null));
+        record(ActionType.COLOR, color.ordinal(), -1);
+    }
+
+    /**
+     * Add an action to the action store, unless this turtle is streaming.
+     */
+    private void record(ActionType type, double argument, int segment) {
+        if (actions == null) {
+            return;
+        }
+        if (actions.size() >= recordingLimit) {
+            throw new RecordingLimitException();
+        }
+        actions.add(type, argument, segment);
+    }
+
+    /**
+     * Pass the segments collected so far to the sink.
+     */
+    private void flush() {
+        sink.accept(segments);
+        segments.clear();
+    }
+
+    /**
+     * Pass any remaining segments to the sink of a streaming turtle, and close the sink.
+     * Does nothing for a turtle that keeps its drawing.
+     */
+    public void finish() {
+        if (sink != null) {
+            try {
+                if (segments.size() > 0) {
+                    flush();
+                }
+            } finally {
+                sink.close();
+            }
+        }
+    }
+
+    /**
+     * Repeat the actions recorded by another turtle a number of times, as if this turtle had carried
+     * them out itself. The other turtle must have started at the origin facing up, so that its actions
+     * describe one repetition relative to wherever this turtle is when the repetition starts: each
+     * repetition is the recorded one rotated by this turtle's heading and translated to its position.
+     * 
+     * If the recorded actions bring the turtle back to its starting heading after some number of
+     * repetitions, and back to its starting position (which a turn other than 0 always does), the
+     * repetitions after that would only retrace the same lines. Those are not added; the turtle just
+     * ends up where all of the repetitions would have left it.
+     * 
+     * The position and heading at the start of each repetition are computed directly from its index
+     * rather than by adding up the repetitions before it, so repetitions can be generated in any order,
+     * or in parallel, and always come out exactly the same.
+     * 
+     * @param body turtle that recorded one repetition, starting at the origin with heading 0
+     * @param count number of times to repeat the recorded actions
+     * @param parallel true to generate the repetitions on all processors when there are enough of them
+     */
+    void repeat(DrawableTurtle body, int count, boolean parallel) {
+        Repetition repetition = new Repetition(this, body);
+
+        int period = period(body);
+        int emitted = count;
+        int last = count;
+        if (period != 0 && period < count) {
+            emitted = period;
+            last = count % period;
+        }
+
+        if (sink == null) {
+            long totalActions = actions.size() + (long) emitted * repetition.actionCount;
+            if (totalActions > recordingLimit) {
+                throw new RecordingLimitException();
+            }
+            if (totalActions > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Too many actions to store: " + totalActions);
+            }
+            repetition.generate(this, 0, emitted, parallel);
+        } else {
+            // generate about a batch of segments at a time, passing each batch on before the next
+            int perBatch = Math.max(1, BATCH_SIZE / Math.max(1, repetition.segmentCount));
+            for (int from = 0; from < emitted; from = (int) Math.min(emitted, (long) from + perBatch)) {
+                repetition.generate(this, from, (int) Math.min(emitted, (long) from + perBatch), parallel);
+                if (segments.size() >= BATCH_SIZE) {
+                    flush();
+                }
+            }
+        }
+
+        this.currentX = repetition.x(last);
+        this.currentY = repetition.y(last);
+        setHeading(repetition.heading(last));
+        this.currentColor = body.currentColor;
+    }
+
+    /**
+     * Find the number of repetitions of a turtle's actions after which the turtle is back where it started.
+     * 
+     * @param body turtle that recorded one repetition, starting at the origin with heading 0
+     * @return the number of repetitions, or 0 if the turtle never returns to where it started
+     */
+    private static int period(DrawableTurtle body) {
+        double turn = body.currentHeading;
+        if (turn != Math.rint(turn)) {
+            return 0;
+        }
+        if (turn != 0) {
+            return 360 / gcd((int) turn, 360);
+        }
+        double scale = 1.0;
+        for (int i = 0; i < body.segments.size(); i++) {
+            scale += body.segments.length(i);
+        }
+        double tolerance = scale * 1e-9;
+        if (Math.abs(body.currentX) <= tolerance && Math.abs(body.currentY) <= tolerance) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * The repetitions of one recorded loop body, starting from a turtle's position and heading.
+     * 
+     * Each repetition moves the turtle by the body's displacement d, rotated by the heading it starts
+     * with, and then turns it by the body's turn. If the turn is 0, the k-th repetition starts at
+     * p0 + k R(h0) d. Otherwise the repetitions rotate around a fixed centre c, and the k-th repetition
+     * starts at c - R(hk) u, where u = (I - R(turn))^-1 d and c = p0 + R(h0) u.
+     */
+    private static class Repetition {
+        final ActionStore bodyActions;
+        final SegmentStore bodySegments;
+        final int actionCount;
+        final int segmentCount;
+
+        final double startX;
+        final double startY;
+        final double startHeading;
+        final double turn;
+
+        // the centre and offset if the body turns, or the step per repetition if it does not
+        final double centerX;
+        final double centerY;
+        final double offsetX;
+        final double offsetY;
+
+        Repetition(DrawableTurtle turtle, DrawableTurtle body) {
+            this.bodyActions = body.actions;
+            this.bodySegments = body.segments;
+            this.actionCount = body.actions.size();
+            this.segmentCount = body.segments.size();
+
+            this.startX = turtle.currentX;
+            this.startY = turtle.currentY;
+            this.startHeading = turtle.currentHeading;
+            this.turn = body.currentHeading;
+
+            double dx = body.currentX;
+            double dy = body.currentY;
+            double radians = Math.toRadians(startHeading);
+            double cos = Math.cos(radians);
+            double sin = Math.sin(radians);
+            if (turn == 0) {
+                this.centerX = startX;
+                this.centerY = startY;
+                this.offsetX = dx * cos + dy * sin;
+                this.offsetY = -dx * sin + dy * cos;
+            } else {
+                double turnCos = Math.cos(Math.toRadians(turn));
+                double turnSin = Math.sin(Math.toRadians(turn));
+                double det = (1 - turnCos) * (1 - turnCos) + turnSin * turnSin;
+                this.offsetX = ((1 - turnCos) * dx + turnSin * dy) / det;
+                this.offsetY = (-turnSin * dx + (1 - turnCos) * dy) / det;
+                this.centerX = startX + offsetX * cos + offsetY * sin;
+                this.centerY = startY - offsetX * sin + offsetY * cos;
+            }
+        }
+
+        double heading(long k) {
+            double heading = startHeading + (k * turn) % 360.0;
+            if (heading >= 360.0)
+                heading -= 360.0;
+            return heading;
+        }
+
+        double x(long k) {
+            if (turn == 0) {
+                return startX + k * offsetX;
+            }
+            double radians = Math.toRadians(heading(k));
+            return centerX - (offsetX * Math.cos(radians) + offsetY * Math.sin(radians));
+        }
+
+        double y(long k) {
+            if (turn == 0) {
+                return startY + k * offsetY;
+            }
+            double radians = Math.toRadians(heading(k));
+            return centerY - (-offsetX * Math.sin(radians) + offsetY * Math.cos(radians));
+        }
+
+        /**
+         * Add the actions and segments of repetitions from (inclusive) to to (exclusive) to the end of
+         * a turtle's stores.
+         */
+        void generate(DrawableTurtle turtle, int from, int to, boolean parallel) {
+            int actionBase = turtle.actions == null ? 0 : turtle.actions.size();
+            int segmentBase = turtle.segments.size();
+            int repetitions = to - from;
+            if (turtle.actions != null) {
+                turtle.actions.ensureCapacity(actionBase + repetitions * actionCount);
+            }
+            turtle.segments.ensureCapacity(segmentBase + repetitions * segmentCount);
+
+            if (parallel && (long) repetitions * actionCount >= PARALLEL_THRESHOLD) {
+                ForkJoinPool.commonPool().invoke(new RepetitionTask(this, turtle, from, to, actionBase, segmentBase));
+            } else {
+                fill(turtle, from, to, actionBase, segmentBase);
+            }
+
+            if (turtle.actions != null) {
+                turtle.actions.size += repetitions * actionCount;
+            }
+            turtle.segments.size += repetitions * segmentCount;
+        }
+
+        /**
+         * Write the actions and segments of repetitions from (inclusive) to to (exclusive) into a turtle's
+         * stores, which must already have room for them, starting at the given indexes.
+         */
+        void fill(DrawableTurtle turtle, int from, int to, int actionBase, int segmentBase) {
+            ActionStore actions = turtle.actions;
+            SegmentStore segments = turtle.segments;
+            for (int k = from; k < to; k++) {
+                double x = x(k);
+                double y = y(k);
+                double radians = Math.toRadians(heading(k));
+                double cos = Math.cos(radians);
+                double sin = Math.sin(radians);
+
+                int s = segmentBase + (k - from) * segmentCount;
+                if (actions != null) {
+                    int a = actionBase + (k - from) * actionCount;
+                    for (int j = 0; j < actionCount; j++) {
+                        actions.type[a + j] = bodyActions.type[j];
+                        actions.argument[a + j] = bodyActions.argument[j];
+                        actions.segment[a + j] = bodyActions.segment[j] < 0 ? -1 : s + bodyActions.segment[j];
+                    }
+                }
+                for (int j = 0; j < segmentCount; j++) {
+                    double x0 = bodySegments.startX[j];
+                    double y0 = bodySegments.startY[j];
+                    double x1 = bodySegments.endX[j];
+                    double y1 = bodySegments.endY[j];
+                    segments.startX[s + j] = x + x0 * cos + y0 * sin;
+                    segments.startY[s + j] = y - x0 * sin + y0 * cos;
+                    segments.endX[s + j] = x + x1 * cos + y1 * sin;
+                    segments.endY[s + j] = y - x1 * sin + y1 * cos;
+                    segments.color[s + j] = bodySegments.color[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Fork/join task that generates a range of repetitions, splitting it in half until it is small enough.
+     */
+    private static class RepetitionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Repetition repetition;
+        private final DrawableTurtle out;
+        private final int from;
+        private final int to;
+        private final int actionBase;
+        private final int segmentBase;
+
+        RepetitionTask(Repetition repetition, DrawableTurtle out, int from, int to, int actionBase, int segmentBase) {
+            this.repetition = repetition;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.actionBase = actionBase;
+            this.segmentBase = segmentBase;
+        }
+
+        @Override
+        protected void compute() {
+            if ((long) (to - from) * repetition.actionCount <= PARALLEL_THRESHOLD / 4 || to - from == 1) {
+                repetition.fill(out, from, to, actionBase, segmentBase);
+            } else {
+                int middle = (from + to) >>> 1;
+                int half = middle - from;
+                invokeAll(new RepetitionTask(repetition, out, from, middle, actionBase, segmentBase),
+                        new RepetitionTask(repetition, out, middle, to,
+                                actionBase + half * repetition.actionCount, segmentBase + half * repetition.segmentCount));
+            }
+        }
+    }
+
+    /**
+     * Thrown when a turtle records more actions than its recording limit allows.
+     */
+    static class RecordingLimitException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        RecordingLimitException() {
+            super("Recording limit exceeded", null, false, false);
+        }
+    }
+
+    /**
+     * Make a turtle whose drawing is a finished one, such as one saved with saveDrawing(), without
+     * running the program that drew it. Each segment is recorded as a forward action; the turns and
+     * color changes between them are not known.
+     * 
+     * @param drawing the segments of the drawing
+     * @return a turtle that has drawn the segments
+     */
+    public static DrawableTurtle replay(SegmentSource drawing) {
+        final DrawableTurtle turtle = new DrawableTurtle();
+        turtle.segments.ensureCapacity(drawing.size());
+        turtle.actions.ensureCapacity(drawing.size());
+        drawing.replay(new SegmentSink() {
+            @Override
+            public void accept(SegmentStore batch) {
+                for (int i = 0; i < batch.size(); i++) {
+                    turtle.actions.add(ActionType.FORWARD, batch.length(i), turtle.segments.size() + i);
+                }
+                turtle.segments.addAll(batch);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return turtle;
+    }
+
+    /**
+     * Save the segments drawn by this turtle in a segment file, so that the drawing can be shown or
+     * drawn into a file again with replay() instead of running the program again.
+     * 
+     * @param file name of the file to write
+     * @param compact true to save the segments in about half the space, to within float precision
+     * @throws IOException if the file cannot be written
+     */
+    public void saveDrawing(String file, boolean compact) throws IOException {
+        checkNotStreaming();
+        SegmentFile.write(segments, file, compact);
     }
 
     /**
      * Draw the image created by this turtle in a window on the screen.
      */
     public void draw() {
+        checkNotStreaming();
         SwingUtilities.invokeLater(() -> {
-            (new TurtleGUI(actionList, canvasWidth, canvasHeight)).setVisible(true);
+            (new TurtleGUI(actionList, segments, canvasWidth, canvasHeight)).setVisible(true);
         });
         return;
     }
+
+    /**
+     * Draw the image created by this turtle into a PNG file, without opening a window.
+     * 
+     * @param file name of the PNG file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void drawToFile(String file) throws IOException {
+        drawToFile(file, false);
+    }
+
+    /**
+     * Draw the image created by this turtle into a PNG file, without opening a window.
+     * 
+     * @param file name of the PNG file to write
+     * @param parallel true to draw large images tile by tile on all processors
+     * @throws IOException if the file cannot be written
+     */
+    public void drawToFile(String file, boolean parallel) throws IOException {
+        drawToFile(file, parallel, false);
+    }
+
+    /**
+     * Draw the image created by this turtle into a PNG file, without opening a window.
+     * 
+     * @param file name of the PNG file to write
+     * @param parallel true to draw large images tile by tile on all processors
+     * @param simplify true to merge collinear and retraced segments first, see SegmentSimplifier
+     * @throws IOException if the file cannot be written
+     */
+    public void drawToFile(String file, boolean parallel, boolean simplify) throws IOException {
+        checkNotStreaming();
+        TurtleRenderer renderer = new TurtleRenderer(canvasWidth, canvasHeight);
+        renderer.setParallel(parallel);
+        renderer.drawSegments(simplify ? SegmentSimplifier.simplify(segments) : segments);
+        renderer.writePng(file);
+    }
+
+    /**
+     * Draw the image created by this turtle into an SVG or PostScript file, without opening a window.
+     * 
+     * @param file name of the file to write
+     * @param format the kind of file to write
+     * @param simplify true to merge collinear and retraced segments first, see SegmentSimplifier
+     * @throws IOException if the file cannot be written
+     */
+    public void drawToVectorFile(String file, VectorExporter.Format format, boolean simplify) throws IOException {
+        checkNotStreaming();
+        VectorExporter.export(simplify ? SegmentSimplifier.simplify(segments) : segments, file, format,
+                canvasWidth, canvasHeight);
+    }
+
+    private void checkNotStreaming() {
+        if (sink != null) {
+            throw new IllegalStateException("A turtle that streams its segments does not keep its drawing");
+        }
+    }
 }
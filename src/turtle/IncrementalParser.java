@@ -0,0 +1,483 @@
+/**
+ * This class checks a Turtle Graphics program that is being edited, and keeps its abstract syntax tree up to date
+ * without lexing and parsing the whole program again after every edit.
+ *
+ * The program's tokens are kept with their offsets in the source. Since a token is a run of characters between
+ * whitespace, an edit can only change the tokens that touch it, so only those are lexed again. The tree is the one
+ * TurtleParser.checkProgram() builds, and alongside it the number of tokens in every statement is kept. After an
+ * edit, the parser finds the innermost block whose begin and end are untouched, and checks the statements of that
+ * block again from the first one the edit touches, until it is past the edit and back at the start of a statement
+ * that was there before. Those statements replace the old ones in the tree; every other subtree is kept as it is.
+ * If that does not work out, for example because the edit adds or removes a begin or an end, or introduces a
+ * syntax error, the whole program is checked again, so the tree and the errors printed are always exactly those
+ * of checkProgram().
+ *
+ * Lexing and parsing are only done again for the statements an edit touches. The rest of the work for an edit is
+ * still proportional to the size of the program: the source and the offsets of the tokens after the edit are
+ * copied and moved along, and the statements of the block that is edited are counted through to find the one the
+ * edit is in. That is plain array work, much cheaper than checking the whole program again, but an edit to a
+ * large program does take longer than the same edit to a small one.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class IncrementalParser {
+
+	/**
+	 * The statements of a block, with the number of tokens in each.
+	 */
+	private static class Block {
+		final GrammarNode statementList;
+		final ArrayList<Span> spans = new ArrayList<Span>();
+
+		Block(GrammarNode statementList) {
+			this.statementList = statementList;
+		}
+	}
+
+	/**
+	 * The number of tokens in a statement, and the block inside it if it is a loop.
+	 */
+	private static class Span {
+		int width;
+		final Block body;
+
+		Span(int width, Block body) {
+			this.width = width;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * A lexer that reads the tokens already found in the source, from a given token on.
+	 */
+	private class TokenLexer extends TurtleLexer {
+		private int next;
+		private int current;
+
+		TokenLexer(int first) {
+			this.next = first;
+		}
+
+		@Override
+		public TokenType nextToken() {
+			if (next >= tokenCount) {
+				throw new NoSuchElementException();
+			}
+			current = next++;
+			return types[current];
+		}
+
+		@Override
+		public String tokenText() {
+			if (types[current].keyword != null) {
+				return types[current].keyword;
+			}
+			return new String(source, starts[current], ends[current] - starts[current], StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < tokenCount;
+		}
+	}
+
+	private byte[] source;
+	private int tokenCount = 0;
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private TokenType[] types = new TokenType[16];
+
+	private GrammarNode tree;
+	private Block root;
+	// the number of tokens in the statements of the root block
+	private int rootWidth;
+
+	private boolean incremental = false;
+	private int reparsedTokens = 0;
+
+	/**
+	 * Creates a new IncrementalParser object and checks the program in the given file
+	 * @param file The file that contains the turtle program
+	 * @throws java.io.UncheckedIOException if the file cannot be read
+	 */
+	public IncrementalParser(String file) {
+		this(read(file));
+	}
+
+	/**
+	 * Creates a new IncrementalParser object and checks the given program
+	 * @param source The text of the turtle program
+	 */
+	public IncrementalParser(byte[] source) {
+		this.source = source.clone();
+		TokenRun tokens = lex(0, this.source.length);
+		splice(0, 0, tokens, 0);
+		parseAll();
+	}
+
+	private static byte[] read(String file) {
+		try {
+			return Files.readAllBytes(Paths.get(file));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns the abstract syntax tree of the program as it is now. The tree is changed in place by later edits.
+	 * @return The root of the tree, as checkProgram() would return it, or null if the program contains syntax errors
+	 */
+	public GrammarNode getTree() {
+		return tree;
+	}
+
+	/**
+	 * @return The text of the program as it is now
+	 */
+	public String getSource() {
+		return new String(source, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return True if the last edit was handled by checking part of the program, false if the whole program was checked
+	 */
+	public boolean wasIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * @return The number of tokens checked again by the last edit
+	 */
+	public int getReparsedTokens() {
+		return reparsedTokens;
+	}
+
+	/**
+	 * Replaces part of the program's text, and checks the program again.
+	 * @param offset The offset of the first byte to replace
+	 * @param length The number of bytes to replace
+	 * @param replacement The text to put in their place
+	 * @return The root of the new tree, as checkProgram() would return it, or null if the program contains syntax errors
+	 */
+	public GrammarNode edit(int offset, int length, String replacement) {
+		if (offset < 0 || length < 0 || offset + length > source.length) {
+			throw new IndexOutOfBoundsException("Edit " + offset + "+" + length + " outside 0.." + source.length);
+		}
+		byte[] inserted = replacement.getBytes(StandardCharsets.UTF_8);
+		int removedEnd = offset + length;
+		int delta = inserted.length - length;
+
+		// the old tokens that touch the edit are [first, last); all others are unchanged
+		int first = firstEndingAtOrAfter(offset);
+		int last = firstStartingAfter(removedEnd);
+		int regionStart = first < last ? Math.min(offset, starts[first]) : offset;
+		int regionEnd = offset + inserted.length;
+		if (first < last) {
+			regionEnd = Math.max(regionEnd, ends[last - 1] + delta);
+		}
+
+		byte[] edited = new byte[source.length + delta];
+		System.arraycopy(source, 0, edited, 0, offset);
+		System.arraycopy(inserted, 0, edited, offset, inserted.length);
+		System.arraycopy(source, removedEnd, edited, offset + inserted.length, source.length - removedEnd);
+		byte[] old = source;
+		source = edited;
+
+		TokenRun tokens = lex(regionStart, regionEnd);
+		boolean sameTokens = sameTokens(old, first, last, tokens);
+		splice(first, last, tokens, delta);
+
+		incremental = true;
+		reparsedTokens = 0;
+		if (sameTokens) {
+			// only whitespace changed, so the tree is still right
+			return tree;
+		}
+		if (root == null || !reparse(first, last, tokens.count)) {
+			parseAll();
+		}
+		return tree;
+	}
+
+	/**
+	 * Helper method that checks the whole program again.
+	 */
+	private void parseAll() {
+		incremental = false;
+		reparsedTokens = tokenCount;
+		TurtleParser parser = new TurtleParser(new TokenLexer(0));
+		try {
+			tree = parser.checkProgram();
+		} catch (NoSuchElementException e) {
+			// checkProgram() reads past the last token if the program stops before its first statement
+			tree = null;
+		}
+		// checkProgram() can return a tree that skips some tokens after it has found a syntax error, and such
+		// a tree cannot be updated statement by statement
+		root = tree == null || parser.hasError() ? null : block(tree.children.get(0));
+		rootWidth = root == null ? 0 : width(root);
+	}
+
+	/**
+	 * Helper method that checks again the statements that contain the tokens an edit changed, and puts them in the tree.
+	 * @param first The index of the first old token that was replaced
+	 * @param last The index just past the last old token that was replaced
+	 * @param count The number of new tokens that replaced them
+	 * @return True if the tree has been updated, false if the whole program has to be checked again
+	 */
+	private boolean reparse(int first, int last, int count) {
+		int delta = count - (last - first);
+		List<Span> path = new ArrayList<Span>();
+
+		// find the innermost block whose begin and end tokens are before and after the edit
+		Block block = root;
+		int begin = 0;
+		int end = 1 + rootWidth;
+		int statement;
+		int position;
+		while (true) {
+			if (first <= begin || last > end) {
+				return false;
+			}
+			statement = 0;
+			position = begin + 1;
+			while (statement + 1 < block.spans.size() && position + block.spans.get(statement).width <= first) {
+				position += block.spans.get(statement).width;
+				statement++;
+			}
+			Span span = block.spans.get(statement);
+			if (span.body != null && first > position + 2 && last <= position + span.width - 1) {
+				path.add(span);
+				block = span.body;
+				begin = position + 2;
+				end = position + span.width - 1;
+			} else {
+				break;
+			}
+		}
+
+		// check statements from the first one the edit touches until the next old statement after the edit
+		TokenLexer lexer = new TokenLexer(position);
+		TurtleParser parser = new TurtleParser(lexer);
+		parser.setPrintErrors(false);
+		List<GrammarNode> statements = new ArrayList<GrammarNode>();
+		List<Span> spans = new ArrayList<Span>();
+		int next = position;
+		int oldStatement = statement;
+		int oldPosition = position;
+		while (true) {
+			if (next >= first + count) {
+				while (oldStatement < block.spans.size() && (oldPosition < last || oldPosition + delta < next)) {
+					oldPosition += block.spans.get(oldStatement).width;
+					oldStatement++;
+				}
+				if (oldPosition >= last && oldPosition + delta == next) {
+					break;
+				}
+			}
+			if (next >= end + delta) {
+				return false;
+			}
+			GrammarNode node;
+			try {
+				node = parser.checkNextStatement();
+			} catch (NoSuchElementException e) {
+				return false;
+			}
+			if (node == null || parser.hasError()) {
+				return false;
+			}
+			Span span = span(node);
+			if (lexer.next - next != span.width) {
+				return false;
+			}
+			statements.add(node);
+			spans.add(span);
+			next = lexer.next;
+		}
+		if (block.spans.size() - (oldStatement - statement) + spans.size() == 0) {
+			// a block needs a statement
+			return false;
+		}
+
+		List<GrammarNode> oldStatements = block.statementList.children.subList(statement, oldStatement);
+		oldStatements.clear();
+		oldStatements.addAll(statements);
+		List<Span> oldSpans = block.spans.subList(statement, oldStatement);
+		oldSpans.clear();
+		oldSpans.addAll(spans);
+		for (Span span : path) {
+			span.width += delta;
+		}
+		rootWidth += delta;
+		reparsedTokens = next - position;
+		return true;
+	}
+
+	/**
+	 * Helper method that builds the statement widths of a block node from checkProgram()'s tree.
+	 */
+	private static Block block(GrammarNode blockNode) {
+		Block block = new Block(blockNode.children.get(1));
+		for (GrammarNode statement : block.statementList.children) {
+			block.spans.add(span(statement));
+		}
+		return block;
+	}
+
+	private static Span span(GrammarNode statement) {
+		GrammarNode child = statement.children.get(0);
+		if (child.type.equals("loop")) {
+			Block body = block(child.children.get(2));
+			// loop, count, begin and end, and the statements of the body
+			return new Span(4 + width(body), body);
+		}
+		return new Span(leaves(child), null);
+	}
+
+	private static int width(Block block) {
+		int width = 0;
+		for (Span span : block.spans) {
+			width += span.width;
+		}
+		return width;
+	}
+
+	private static int leaves(GrammarNode node) {
+		if (node.children.isEmpty()) {
+			return 1;
+		}
+		int leaves = 0;
+		for (GrammarNode child : node.children) {
+			leaves += leaves(child);
+		}
+		return leaves;
+	}
+
+	/**
+	 * Tokens found by lexing part of the source.
+	 */
+	private static class TokenRun {
+		int count = 0;
+		int[] starts = new int[4];
+		int[] ends = new int[4];
+		TokenType[] types = new TokenType[4];
+	}
+
+	/**
+	 * Helper method that lexes the bytes of the source from start (inclusive) to end (exclusive).
+	 */
+	private TokenRun lex(int start, int end) {
+		TokenRun tokens = new TokenRun();
+		MappedTurtleLexer lexer = new MappedTurtleLexer(ByteBuffer.wrap(source, start, end - start));
+		while (lexer.hasNext()) {
+			TokenType type = lexer.nextToken();
+			if (tokens.count == tokens.types.length) {
+				tokens.starts = Arrays.copyOf(tokens.starts, tokens.count * 2);
+				tokens.ends = Arrays.copyOf(tokens.ends, tokens.count * 2);
+				tokens.types = Arrays.copyOf(tokens.types, tokens.count * 2);
+			}
+			tokens.starts[tokens.count] = lexer.tokenStart();
+			tokens.ends[tokens.count] = lexer.tokenEnd();
+			tokens.types[tokens.count] = type;
+			tokens.count++;
+		}
+		return tokens;
+	}
+
+	/**
+	 * Helper method that replaces the tokens [first, last) with new ones, and moves the tokens after them by delta bytes.
+	 */
+	private void splice(int first, int last, TokenRun tokens, int delta) {
+		int newCount = tokenCount - (last - first) + tokens.count;
+		if (newCount > types.length) {
+			int capacity = Math.max(newCount, types.length * 2);
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			types = Arrays.copyOf(types, capacity);
+		}
+		int moved = tokenCount - last;
+		System.arraycopy(starts, last, starts, first + tokens.count, moved);
+		System.arraycopy(ends, last, ends, first + tokens.count, moved);
+		System.arraycopy(types, last, types, first + tokens.count, moved);
+		System.arraycopy(tokens.starts, 0, starts, first, tokens.count);
+		System.arraycopy(tokens.ends, 0, ends, first, tokens.count);
+		System.arraycopy(tokens.types, 0, types, first, tokens.count);
+		for (int i = first + tokens.count; i < newCount; i++) {
+			starts[i] += delta;
+			ends[i] += delta;
+		}
+		Arrays.fill(types, newCount, Math.max(newCount, tokenCount), null);
+		tokenCount = newCount;
+	}
+
+	/**
+	 * Helper method that determines whether the new tokens have the same kinds and text as the old tokens [first, last).
+	 */
+	private boolean sameTokens(byte[] old, int first, int last, TokenRun tokens) {
+		if (tokens.count != last - first) {
+			return false;
+		}
+		for (int i = 0; i < tokens.count; i++) {
+			int length = ends[first + i] - starts[first + i];
+			if (tokens.types[i] != types[first + i] || tokens.ends[i] - tokens.starts[i] != length) {
+				return false;
+			}
+			for (int j = 0; j < length; j++) {
+				if (source[tokens.starts[i] + j] != old[starts[first + i] + j]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method that finds the first token that ends at or after the given offset.
+	 */
+	private int firstEndingAtOrAfter(int offset) {
+		int low = 0;
+		int high = tokenCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (ends[middle] < offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Helper method that finds the first token that starts after the given offset.
+	 */
+	private int firstStartingAfter(int offset) {
+		int low = 0;
+		int high = tokenCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (starts[middle] <= offset) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
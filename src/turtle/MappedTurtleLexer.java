@@ -0,0 +1,234 @@
+/**
+ * This class is a TurtleLexer that memory-maps the Turtle Graphics program and scans its bytes directly,
+ * instead of splitting it into Strings with a Scanner and classifying each word with regular expressions.
+ * Tokens are identified by their kind and their start/end offsets in the file, and the text of a token is
+ * only turned into a String when it is asked for.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+public class MappedTurtleLexer extends TurtleLexer {
+
+	private static final TokenType[] KEYWORDS = {
+		TokenType.PROGRAM_END, TokenType.BEGIN, TokenType.END, TokenType.LOOP, TokenType.FORWARD, TokenType.TURN
+	};
+	private static final byte[][] KEYWORD_BYTES = new byte[KEYWORDS.length][];
+
+	static {
+		for (int i = 0; i < KEYWORDS.length; i++) {
+			KEYWORD_BYTES[i] = KEYWORDS[i].keyword.getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	// states of the scanner while it reads a word
+	private static final int START = 0;
+	private static final int IN_NUMBER = 1;
+	private static final int IN_VARIABLE = 2;
+	private static final int IN_EQUALS = 3;
+	private static final int IN_INVALID = 4;
+
+	private final ByteBuffer source;
+	private final int limit;
+	private int position;
+
+	private TokenType tokenType;
+	private int tokenStart;
+	private int tokenEnd;
+
+	/**
+	 * Creates a new MappedTurtleLexer object that maps the contents of the given file into memory
+	 * @param file The Turtle Graphics program to read
+	 * @throws UncheckedIOException if the file cannot be read
+	 */
+	public MappedTurtleLexer(String file) {
+		this(map(file));
+	}
+
+	/**
+	 * Creates a new MappedTurtleLexer object that reads the bytes between the position and the limit of the given buffer
+	 * @param source The Turtle Graphics program to read
+	 */
+	public MappedTurtleLexer(ByteBuffer source) {
+		this.source = source;
+		this.position = source.position();
+		this.limit = source.limit();
+	}
+
+	/**
+	 * Helper method that maps a file into memory.
+	 * @param file The file to map
+	 * @return A read-only buffer over the contents of the file
+	 * @throws UncheckedIOException if the file cannot be read
+	 */
+	static ByteBuffer map(String file) {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public TokenType nextToken() {
+		skipWhitespace();
+		if (position >= limit) {
+			throw new NoSuchElementException();
+		}
+
+		tokenStart = position;
+		int state = START;
+		while (position < limit) {
+			byte b = source.get(position);
+			if (isWhitespace(b)) {
+				break;
+			}
+			switch (state) {
+			case START:
+				if (isDigit(b)) {
+					state = IN_NUMBER;
+				} else if (isLetter(b)) {
+					state = IN_VARIABLE;
+				} else if (b == '=') {
+					state = IN_EQUALS;
+				} else {
+					state = IN_INVALID;
+				}
+				break;
+			case IN_NUMBER:
+				if (!isDigit(b)) {
+					state = IN_INVALID;
+				}
+				break;
+			case IN_VARIABLE:
+				if (!isLetter(b) && !isDigit(b)) {
+					state = IN_INVALID;
+				}
+				break;
+			case IN_EQUALS:
+				state = IN_INVALID;
+				break;
+			default:
+				break;
+			}
+			position++;
+		}
+		tokenEnd = position;
+
+		switch (state) {
+		case IN_NUMBER:
+			tokenType = TokenType.NUMBER;
+			break;
+		case IN_VARIABLE:
+			tokenType = keyword();
+			break;
+		case IN_EQUALS:
+			tokenType = TokenType.EQUALS;
+			break;
+		default:
+			tokenType = TokenType.INVALID_VARIABLE;
+		}
+		return tokenType;
+	}
+
+	@Override
+	public String tokenText() {
+		if (tokenType.keyword != null) {
+			return tokenType.keyword;
+		}
+		byte[] text = new byte[tokenEnd - tokenStart];
+		for (int i = 0; i < text.length; i++) {
+			text[i] = source.get(tokenStart + i);
+		}
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public int tokenNumber() {
+		int value = 0;
+		for (int i = tokenStart; i < tokenEnd; i++) {
+			int digit = source.get(i) - '0';
+			if (value > (Integer.MAX_VALUE - digit) / 10) {
+				throw new NumberFormatException("For input string: \"" + tokenText() + "\"");
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	@Override
+	public boolean hasNext() {
+		skipWhitespace();
+		return position < limit;
+	}
+
+	/**
+	 * Returns the offset in the source of the first byte of the token last read by nextToken().
+	 * @return The start offset of the current token
+	 */
+	public int tokenStart() {
+		return tokenStart;
+	}
+
+	/**
+	 * Returns the offset in the source just past the last byte of the token last read by nextToken().
+	 * @return The end offset of the current token
+	 */
+	public int tokenEnd() {
+		return tokenEnd;
+	}
+
+	/**
+	 * Helper method that determines whether a word made of letters and digits is one of the keywords.
+	 * @return The keyword's token type, or VARIABLE if the word is not a keyword
+	 */
+	private TokenType keyword() {
+		int length = tokenEnd - tokenStart;
+		for (int k = 0; k < KEYWORD_BYTES.length; k++) {
+			byte[] keyword = KEYWORD_BYTES[k];
+			if (keyword.length != length) {
+				continue;
+			}
+			int i = 0;
+			while (i < length && source.get(tokenStart + i) == keyword[i]) {
+				i++;
+			}
+			if (i == length) {
+				return KEYWORDS[k];
+			}
+		}
+		return TokenType.VARIABLE;
+	}
+
+	/**
+	 * Helper method that moves the scan position past any whitespace.
+	 */
+	private void skipWhitespace() {
+		while (position < limit && isWhitespace(source.get(position))) {
+			position++;
+		}
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || (b >= '\t' && b <= '\r') || (b >= 0x1C && b <= 0x1F);
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isLetter(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+	}
+}
@@ -0,0 +1,12 @@
+/**
+ * Enumeration of the kinds of nodes in a compact Abstract Syntax Tree.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+enum NodeKind {
+	PROGRAM, LOOP, FORWARD, TURN, ASSIGNMENT
+}
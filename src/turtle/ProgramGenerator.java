@@ -0,0 +1,108 @@
+/**
+ * This class writes synthetic Turtle Graphics programs of a chosen size, for measuring how the lexer, parser,
+ * interpreter and renderer scale. The same size and seed always give the same program.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+public class ProgramGenerator {
+
+	private static final String[] VARIABLES = {"a", "b", "c", "side", "angle", "x1"};
+
+	/**
+	 * Writes a program made of a flat list of statements: forward and turn commands with numbers and variables,
+	 * assignments, and short loops.
+	 * @param statements The number of statements in the program
+	 * @param seed The seed of the random choices
+	 * @return The text of the program
+	 */
+	public static String flat(int statements, long seed) {
+		Random random = new Random(seed);
+		StringBuilder program = new StringBuilder("begin\n");
+		// assign every variable first, so that the program can also be run
+		for (String variable : VARIABLES) {
+			program.append('\t').append(variable).append(" = ").append(1 + random.nextInt(20)).append('\n');
+		}
+		for (int i = 0; i < statements; i++) {
+			program.append('\t');
+			switch (random.nextInt(5)) {
+			case 0:
+				program.append("forward ").append(operand(random));
+				break;
+			case 1:
+				program.append("turn ").append(operand(random));
+				break;
+			case 2:
+				program.append(VARIABLES[random.nextInt(VARIABLES.length)]).append(" = ").append(random.nextInt(100));
+				break;
+			case 3:
+				program.append("loop ").append(1 + random.nextInt(4)).append(" begin forward ")
+						.append(operand(random)).append(" turn ").append(operand(random)).append(" end");
+				break;
+			default:
+				program.append("forward ").append(random.nextInt(50)).append("\n\tturn ").append(random.nextInt(360));
+			}
+			program.append('\n');
+		}
+		return program.append("end\nprogramEnd\n").toString();
+	}
+
+	/**
+	 * Writes a program that is a single chain of nested loops, each repeating twice, with a step in every body.
+	 * @param depth The number of nested loops
+	 * @return The text of the program
+	 */
+	public static String nested(int depth) {
+		StringBuilder program = new StringBuilder("begin\n");
+		for (int i = 0; i < depth; i++) {
+			program.append("loop 2 begin forward 1 turn ").append(i % 360).append('\n');
+		}
+		for (int i = 0; i < depth; i++) {
+			program.append("end\n");
+		}
+		return program.append("end\nprogramEnd\n").toString();
+	}
+
+	/**
+	 * Writes a short program whose loops run the given number of steps: one loop that can be memoized, and one
+	 * whose body assigns a variable and so has to be run step by step.
+	 * @param steps The number of times each loop repeats
+	 * @return The text of the program
+	 */
+	public static String loopHeavy(int steps) {
+		return "begin\n"
+				+ "\tloop " + steps + "\n\tbegin\n\t\tforward 3\n\t\tturn 91\n\t\tforward 1\n\tend\n"
+				+ "\tside = 2\n"
+				+ "\tloop " + steps + "\n\tbegin\n\t\tforward side\n\t\tturn 89\n\t\tside = 3\n\tend\n"
+				+ "end\nprogramEnd\n";
+	}
+
+	/**
+	 * Writes a program into a temporary file that is deleted when the virtual machine exits.
+	 * @param program The text of the program
+	 * @return The path of the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public static String toFile(String program) throws IOException {
+		File file = File.createTempFile("turtle", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), program.getBytes(StandardCharsets.US_ASCII));
+		return file.getPath();
+	}
+
+	private static String operand(Random random) {
+		if (random.nextBoolean()) {
+			return VARIABLES[random.nextInt(VARIABLES.length)];
+		}
+		return Integer.toString(random.nextInt(100));
+	}
+}
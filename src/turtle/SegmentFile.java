@@ -0,0 +1,342 @@
+/**
+ * This class reads and writes the line segments of a finished drawing in a compact binary file, so that a drawing
+ * from a long-running program can be rendered, exported or shown again without lexing, parsing or running the
+ * program. A SegmentFile memory-maps the file and decodes segments straight from the mapped bytes as it replays
+ * them, so the file is never read into the heap as a whole.
+ *
+ * The file holds, in order:
+ *   a header of the magic number "TSEG", the format version, the number of segments, the number of color runs,
+ *   the number of segments that do not start where the one before them ended, whether the file is compact, and
+ *   the bounds of the drawing;
+ *   the color runs, each a PenColor ordinal byte followed by the number of consecutive segments of that color;
+ *   one bit for each segment, set if the segment starts where the one before it ended;
+ *   the coordinates: for each segment whose bit is not set its start as two doubles, and then for every segment
+ *   its end, as two doubles, or in a compact file as the offset of its end from its start as two floats.
+ * Turtle drawings are connected, so only their first start is written, and a drawing takes a little over 16 bytes
+ * per segment, or 8 in a compact file, instead of 33 in a SegmentStore. Numbers are stored big-endian.
+ *
+ * A file that is not compact gives back exactly the segments that were written. In a compact file each offset is
+ * taken from the start as it will be decoded rather than as it was drawn, so the rounding of one float never
+ * carries into the next point: however long the drawing is, a decoded end is off from where it was drawn by at
+ * most the rounding of its own offset, less than a ten-millionth of the segment's length. That is enough to move
+ * a line that ends exactly on a pixel boundary by one pixel when it is drawn again, so compact files are for
+ * keeping large drawings rather than for drawing them again pixel for pixel.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class SegmentFile implements SegmentSource {
+
+	private static final int MAGIC = 0x54534547;
+	private static final int VERSION = 1;
+	// the magic number, version, three counts and compact flag as ints, and the four bounds as doubles
+	private static final int HEADER_BYTES = 6 * 4 + 4 * 8;
+	private static final int RUN_BYTES = 1 + 4;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final PenColor[] COLORS = PenColor.values();
+
+	private final ByteBuffer data;
+	private final int size;
+	private final int runs;
+	private final int runsStart;
+	private final int flagsStart;
+	private final int coordinatesStart;
+	private final boolean compact;
+	private final double left;
+	private final double bottom;
+	private final double right;
+	private final double top;
+
+	/**
+	 * Creates a new SegmentFile object that maps a file written by write() into memory
+	 * @param file The file to read
+	 * @throws IOException if the file cannot be read, or is not a segment file
+	 */
+	public SegmentFile(String file) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Segment file is too large to map: " + file);
+			}
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (data.limit() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+			throw new IOException("Not a segment file: " + file);
+		}
+		if (data.getInt(4) != VERSION) {
+			throw new IOException("Unsupported segment file version " + data.getInt(4) + ": " + file);
+		}
+		size = data.getInt(8);
+		runs = data.getInt(12);
+		int moves = data.getInt(16);
+		int compactFlag = data.getInt(20);
+		left = data.getDouble(24);
+		bottom = data.getDouble(32);
+		right = data.getDouble(40);
+		top = data.getDouble(48);
+
+		// check that the sections fit the file exactly, and that the runs cover the segments, before anything is decoded
+		long flags = HEADER_BYTES + (long) Math.max(runs, 0) * RUN_BYTES;
+		long coordinates = flags + (Math.max(size, 0) + 7L) / 8;
+		if (size < 0 || runs < 0 || moves < 0 || moves > size || (compactFlag & ~1) != 0
+				|| coordinates + (compactFlag == 1 ? 8L : 16L) * size + 16L * moves != data.limit()) {
+			throw new IOException("Corrupt segment file: " + file);
+		}
+		compact = compactFlag == 1;
+		runsStart = HEADER_BYTES;
+		flagsStart = (int) flags;
+		coordinatesStart = (int) coordinates;
+		long covered = 0;
+		for (int run = 0; run < runs; run++) {
+			int color = data.get(runsStart + run * RUN_BYTES);
+			int length = data.getInt(runsStart + run * RUN_BYTES + 1);
+			if (color < 0 || color >= COLORS.length || length <= 0) {
+				throw new IOException("Corrupt segment file: " + file);
+			}
+			covered += length;
+		}
+		if (covered != size) {
+			throw new IOException("Corrupt segment file: " + file);
+		}
+
+		// every cleared bit is a start to read from the coordinates, so they must match the count in the header,
+		// and the first segment cannot continue from anything
+		long cleared = 0;
+		for (int i = 0; i < size; i += 8) {
+			int bits = Math.min(8, size - i);
+			int set = data.get(flagsStart + (i >> 3)) & ((1 << bits) - 1);
+			cleared += bits - Integer.bitCount(set);
+		}
+		if (cleared != moves || (size > 0 && (data.get(flagsStart) & 1) != 0)) {
+			throw new IOException("Corrupt segment file: " + file);
+		}
+	}
+
+	/**
+	 * Writes the segments of a drawing to a segment file, replacing anything already in it.
+	 * @param segments The segments of the drawing
+	 * @param file The file to write
+	 * @param compact True to write the ends of segments as float offsets, in about half the space, false to write
+	 * them exactly
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(SegmentStore segments, String file, boolean compact) throws IOException {
+		int size = segments.size();
+		int runs = 0;
+		int moves = 0;
+		double left = size > 0 ? Double.POSITIVE_INFINITY : 0;
+		double bottom = size > 0 ? Double.POSITIVE_INFINITY : 0;
+		double right = size > 0 ? Double.NEGATIVE_INFINITY : 0;
+		double top = size > 0 ? Double.NEGATIVE_INFINITY : 0;
+		for (int i = 0; i < size; i++) {
+			if (i == 0 || segments.color[i] != segments.color[i - 1]) {
+				runs++;
+			}
+			if (!continues(segments, i)) {
+				moves++;
+			}
+			left = Math.min(left, Math.min(segments.startX[i], segments.endX[i]));
+			bottom = Math.min(bottom, Math.min(segments.startY[i], segments.endY[i]));
+			right = Math.max(right, Math.max(segments.startX[i], segments.endX[i]));
+			top = Math.max(top, Math.max(segments.startY[i], segments.endY[i]));
+		}
+
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(runs).putInt(moves).putInt(compact ? 1 : 0);
+			buffer.putDouble(left).putDouble(bottom).putDouble(right).putDouble(top);
+
+			for (int start = 0; start < size; ) {
+				int end = start + 1;
+				while (end < size && segments.color[end] == segments.color[start]) {
+					end++;
+				}
+				makeRoom(channel, buffer, RUN_BYTES);
+				buffer.put(segments.color[start]).putInt(end - start);
+				start = end;
+			}
+
+			for (int i = 0; i < size; i += 8) {
+				int flags = 0;
+				for (int bit = 0; bit < 8 && i + bit < size; bit++) {
+					if (continues(segments, i + bit)) {
+						flags |= 1 << bit;
+					}
+				}
+				makeRoom(channel, buffer, 1);
+				buffer.put((byte) flags);
+			}
+
+			// the pen is where the decoder will have put it, not where the turtle was
+			double x = 0;
+			double y = 0;
+			for (int i = 0; i < size; i++) {
+				makeRoom(channel, buffer, 4 * 8);
+				if (!continues(segments, i)) {
+					x = segments.startX[i];
+					y = segments.startY[i];
+					buffer.putDouble(x).putDouble(y);
+				}
+				if (compact) {
+					float dx = (float) (segments.endX[i] - x);
+					float dy = (float) (segments.endY[i] - y);
+					buffer.putFloat(dx).putFloat(dy);
+					x += dx;
+					y += dy;
+				} else {
+					x = segments.endX[i];
+					y = segments.endY[i];
+					buffer.putDouble(x).putDouble(y);
+				}
+			}
+			flush(channel, buffer);
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return True if the ends of the segments were written as float offsets, so are not exactly as drawn
+	 */
+	public boolean isCompact() {
+		return compact;
+	}
+
+	/**
+	 * @return The smallest x-coordinate of the drawing, or 0 if it is empty
+	 */
+	public double getLeft() {
+		return left;
+	}
+
+	/**
+	 * @return The smallest y-coordinate of the drawing, or 0 if it is empty
+	 */
+	public double getBottom() {
+		return bottom;
+	}
+
+	/**
+	 * @return The largest x-coordinate of the drawing, or 0 if it is empty
+	 */
+	public double getRight() {
+		return right;
+	}
+
+	/**
+	 * @return The largest y-coordinate of the drawing, or 0 if it is empty
+	 */
+	public double getTop() {
+		return top;
+	}
+
+	/**
+	 * Decodes the segments from the mapped file and passes them to a sink in batches of DrawableTurtle.BATCH_SIZE,
+	 * and then closes the sink. The file can be replayed any number of times, and on several threads at once.
+	 * @param sink The sink that consumes the segments
+	 */
+	@Override
+	public void replay(SegmentSink sink) {
+		ByteBuffer runBytes = data.duplicate();
+		runBytes.position(runsStart);
+		ByteBuffer coordinates = data.duplicate();
+		coordinates.position(coordinatesStart);
+		SegmentStore batch = new SegmentStore(Math.min(size, DrawableTurtle.BATCH_SIZE));
+
+		PenColor color = null;
+		int runLeft = 0;
+		int flags = 0;
+		double x = 0;
+		double y = 0;
+		for (int i = 0; i < size; i++) {
+			if (runLeft == 0) {
+				color = COLORS[runBytes.get()];
+				runLeft = runBytes.getInt();
+			}
+			runLeft--;
+			if ((i & 7) == 0) {
+				flags = data.get(flagsStart + (i >> 3));
+			}
+			if ((flags & (1 << (i & 7))) == 0) {
+				x = coordinates.getDouble();
+				y = coordinates.getDouble();
+			}
+			double startX = x;
+			double startY = y;
+			if (compact) {
+				x += coordinates.getFloat();
+				y += coordinates.getFloat();
+			} else {
+				x = coordinates.getDouble();
+				y = coordinates.getDouble();
+			}
+			batch.add(startX, startY, x, y, color);
+			if (batch.size() == DrawableTurtle.BATCH_SIZE) {
+				sink.accept(batch);
+				batch.clear();
+			}
+		}
+		if (batch.size() > 0) {
+			sink.accept(batch);
+		}
+		sink.close();
+	}
+
+	/**
+	 * Decodes the whole drawing into a SegmentStore, for code that needs to read its segments in any order.
+	 * @return A new store holding the segments of the drawing
+	 */
+	public SegmentStore toStore() {
+		final SegmentStore store = new SegmentStore(size);
+		replay(new SegmentSink() {
+			@Override
+			public void accept(SegmentStore batch) {
+				store.addAll(batch);
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		return store;
+	}
+
+	/**
+	 * Helper method that checks whether a segment starts exactly where the segment before it ended.
+	 */
+	private static boolean continues(SegmentStore segments, int i) {
+		return i > 0 && segments.startX[i] == segments.endX[i - 1] && segments.startY[i] == segments.endY[i - 1];
+	}
+
+	/**
+	 * Helper method that writes the buffer to the file if it has less room left than the given number of bytes.
+	 */
+	private static void makeRoom(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush(channel, buffer);
+		}
+	}
+
+	/**
+	 * Helper method that writes everything in the buffer to the file and empties it.
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
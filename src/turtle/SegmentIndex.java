@@ -0,0 +1,376 @@
+/**
+ * This class answers questions about where the segments of a drawing are: which segments cross a rectangle, such
+ * as the part of the drawing that is in view, and which segment is nearest a point, such as where the user clicked.
+ * It is built once, after the program has run, and does not change.
+ *
+ * The segments are placed in a uniform grid of square cells. Each segment is listed in every cell its line passes
+ * through, and the lists of all the cells are packed one after another into a single array, so the whole index
+ * is a few arrays of primitives. A query only looks at the segments listed in the cells it covers. The size of the
+ * cells is chosen from the number of segments, the area they cover and their total length, so that there are
+ * about as many cells as segments and a segment is listed in a few cells on average.
+ *
+ * An index built from a turtle also knows which of the turtle's actions drew each segment, so that a segment
+ * found by a query can be traced back to the command of the program that drew it. Queries may be made from any
+ * thread, but are answered one at a time.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.util.Arrays;
+
+public class SegmentIndex {
+
+	private static final int MAX_CELLS_PER_SIDE = 4096;
+
+	private final SegmentStore segments;
+	private final int[] actions;
+
+	private final double minX;
+	private final double minY;
+	private final double maxX;
+	private final double maxY;
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+	// the segments in cell (column, row) are entries[cellStart[row * columns + column]] up to the next cell's start
+	private final int[] cellStart;
+	private final int[] entries;
+
+	// the number of the query that last found each segment, so that a segment listed in several cells is found once
+	private final int[] seen;
+	private int query = 0;
+
+	/**
+	 * Creates a new SegmentIndex object for the segments drawn by a turtle, which knows the action that drew
+	 * each segment
+	 * @param turtle The turtle, which must have finished drawing and must not stream its segments
+	 */
+	public SegmentIndex(DrawableTurtle turtle) {
+		this(turtle.segments, turtle.actions);
+	}
+
+	/**
+	 * Creates a new SegmentIndex object for a store of segments, which may not be changed afterwards
+	 * @param segments The segments to index
+	 */
+	public SegmentIndex(SegmentStore segments) {
+		this(segments, null);
+	}
+
+	private SegmentIndex(SegmentStore segments, ActionStore actionStore) {
+		this.segments = segments;
+		int size = segments.size;
+
+		if (actionStore == null) {
+			actions = null;
+		} else {
+			actions = new int[size];
+			Arrays.fill(actions, -1);
+			for (int a = 0; a < actionStore.size; a++) {
+				if (actionStore.segment[a] >= 0) {
+					actions[actionStore.segment[a]] = a;
+				}
+			}
+		}
+
+		double left = Double.POSITIVE_INFINITY;
+		double bottom = Double.POSITIVE_INFINITY;
+		double right = Double.NEGATIVE_INFINITY;
+		double top = Double.NEGATIVE_INFINITY;
+		double totalLength = 0;
+		for (int i = 0; i < size; i++) {
+			left = Math.min(left, Math.min(segments.startX[i], segments.endX[i]));
+			bottom = Math.min(bottom, Math.min(segments.startY[i], segments.endY[i]));
+			right = Math.max(right, Math.max(segments.startX[i], segments.endX[i]));
+			top = Math.max(top, Math.max(segments.startY[i], segments.endY[i]));
+			totalLength += segments.length(i);
+		}
+		if (size == 0) {
+			left = bottom = right = top = 0;
+		}
+		double width = right - left;
+		double height = top - bottom;
+
+		// about one cell per segment, and about two cells crossed per segment, but no more than a fixed number of
+		// cells across
+		double cells = Math.max(1, size);
+		double size1 = Math.sqrt(width * height / cells);
+		double size2 = totalLength / (2 * cells);
+		double size3 = Math.max(width, height) / (MAX_CELLS_PER_SIDE - 1);
+		double chosen = Math.max(size1, Math.max(size2, size3));
+		minX = left;
+		minY = bottom;
+		maxX = right;
+		maxY = top;
+		cellSize = chosen > 0 && !Double.isInfinite(chosen) ? chosen : 1;
+		columns = Math.min(MAX_CELLS_PER_SIDE, (int) (width / cellSize) + 1);
+		rows = Math.min(MAX_CELLS_PER_SIDE, (int) (height / cellSize) + 1);
+
+		// count the entries of each cell, then fill them in
+		cellStart = new int[columns * rows + 1];
+		for (int i = 0; i < size; i++) {
+			addToCells(i, null);
+		}
+		for (int c = 0; c < columns * rows; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		entries = new int[cellStart[columns * rows]];
+		int[] filled = Arrays.copyOf(cellStart, columns * rows);
+		for (int i = 0; i < size; i++) {
+			addToCells(i, filled);
+		}
+		seen = new int[size];
+	}
+
+	/**
+	 * Helper method that lists a segment in every cell its line passes through, one column of cells at a time.
+	 * @param i The index of the segment
+	 * @param filled The next free entry of each cell, or null to count the entries of each cell instead
+	 */
+	private void addToCells(int i, int[] filled) {
+		double x0 = segments.startX[i];
+		double y0 = segments.startY[i];
+		double x1 = segments.endX[i];
+		double y1 = segments.endY[i];
+		if (x1 < x0) {
+			double t = x0;
+			x0 = x1;
+			x1 = t;
+			t = y0;
+			y0 = y1;
+			y1 = t;
+		}
+		int firstColumn = column(x0);
+		int lastColumn = column(x1);
+		double slope = x1 > x0 ? (y1 - y0) / (x1 - x0) : 0;
+		for (int column = firstColumn; column <= lastColumn; column++) {
+			// the part of the segment within this column, widened a little so rounding cannot miss a cell
+			double from = Math.max(x0, minX + column * cellSize);
+			double to = Math.min(x1, minX + (column + 1) * cellSize);
+			double yFrom = column == firstColumn ? y0 : y0 + (from - x0) * slope;
+			double yTo = column == lastColumn ? y1 : y0 + (to - x0) * slope;
+			double margin = cellSize * 1e-9;
+			int firstRow = row(Math.min(yFrom, yTo) - margin);
+			int lastRow = row(Math.max(yFrom, yTo) + margin);
+			for (int row = firstRow; row <= lastRow; row++) {
+				int cell = row * columns + column;
+				if (filled == null) {
+					cellStart[cell + 1]++;
+				} else {
+					entries[filled[cell]++] = i;
+				}
+			}
+		}
+	}
+
+	private int column(double x) {
+		return (int) Math.max(0, Math.min(columns - 1, Math.floor((x - minX) / cellSize)));
+	}
+
+	private int row(double y) {
+		return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - minY) / cellSize)));
+	}
+
+	/**
+	 * @return The number of segments in the index
+	 */
+	public int size() {
+		return segments.size;
+	}
+
+	/**
+	 * @return The smallest x-coordinate of any segment, or 0 if there are no segments
+	 */
+	public double getLeft() {
+		return minX;
+	}
+
+	/**
+	 * @return The smallest y-coordinate of any segment, or 0 if there are no segments
+	 */
+	public double getBottom() {
+		return minY;
+	}
+
+	/**
+	 * @return The largest x-coordinate of any segment, or 0 if there are no segments
+	 */
+	public double getRight() {
+		return maxX;
+	}
+
+	/**
+	 * @return The largest y-coordinate of any segment, or 0 if there are no segments
+	 */
+	public double getTop() {
+		return maxY;
+	}
+
+	/**
+	 * Finds the action that drew a segment.
+	 * @param segment The index of the segment
+	 * @return The index of the forward action that drew the segment in the turtle's actions, or -1 if the index
+	 *         was not built from a turtle
+	 */
+	public int actionOf(int segment) {
+		return actions == null ? -1 : actions[segment];
+	}
+
+	/**
+	 * Finds every segment that crosses or touches a rectangle.
+	 * @param left The smallest x-coordinate of the rectangle
+	 * @param bottom The smallest y-coordinate of the rectangle
+	 * @param right The largest x-coordinate of the rectangle
+	 * @param top The largest y-coordinate of the rectangle
+	 * @return The indexes of the segments, in the order they were drawn
+	 */
+	public synchronized int[] query(double left, double bottom, double right, double top) {
+		if (right < left || top < bottom) {
+			return new int[0];
+		}
+		if (left <= minX && bottom <= minY && right >= maxX && top >= maxY) {
+			// the rectangle contains the whole drawing
+			int[] all = new int[segments.size];
+			for (int i = 0; i < all.length; i++) {
+				all[i] = i;
+			}
+			return all;
+		}
+		int[] found = new int[16];
+		int count = 0;
+		nextQuery();
+		int firstColumn = column(left);
+		int lastColumn = column(right);
+		int firstRow = row(bottom);
+		int lastRow = row(top);
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int cell = row * columns + column;
+				for (int e = cellStart[cell]; e < cellStart[cell + 1]; e++) {
+					int i = entries[e];
+					if (seen[i] != query && intersects(i, left, bottom, right, top)) {
+						seen[i] = query;
+						if (count == found.length) {
+							found = Arrays.copyOf(found, count * 2);
+						}
+						found[count++] = i;
+					}
+				}
+			}
+		}
+		if (count > segments.size / 8) {
+			// many segments were found, so it is quicker to list them in order than to sort them
+			int next = 0;
+			for (int i = 0; i < segments.size; i++) {
+				if (seen[i] == query) {
+					found[next++] = i;
+				}
+			}
+		} else {
+			Arrays.sort(found, 0, count);
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+	/**
+	 * Finds the segment nearest a point.
+	 * @param x The x-coordinate of the point
+	 * @param y The y-coordinate of the point
+	 * @return The index of the nearest segment, or -1 if there are no segments
+	 */
+	public int nearest(double x, double y) {
+		return nearest(x, y, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Finds the segment nearest a point, if it is close enough. If several segments are equally near, the one
+	 * drawn last is found, as it is the one on top.
+	 * @param x The x-coordinate of the point
+	 * @param y The y-coordinate of the point
+	 * @param maxDistance The greatest distance the segment may be from the point
+	 * @return The index of the nearest segment, or -1 if no segment is within the distance
+	 */
+	public synchronized int nearest(double x, double y, double maxDistance) {
+		nextQuery();
+		int centerColumn = column(x);
+		int centerRow = row(y);
+		int best = -1;
+		double bestDistance = maxDistance;
+		// a cell r rings out from the point's cell is at least r - 1 cells away from the point
+		for (int ring = 0; ring <= Math.max(columns, rows); ring++) {
+			if (ring > 0 && (ring - 1) * cellSize > bestDistance) {
+				break;
+			}
+			for (int row = Math.max(0, centerRow - ring); row <= Math.min(rows - 1, centerRow + ring); row++) {
+				boolean edge = row == centerRow - ring || row == centerRow + ring;
+				int step = edge ? 1 : 2 * ring;
+				for (int column = centerColumn - ring; column <= centerColumn + ring; column += Math.max(1, step)) {
+					if (column < 0 || column >= columns) {
+						continue;
+					}
+					int cell = row * columns + column;
+					for (int e = cellStart[cell]; e < cellStart[cell + 1]; e++) {
+						int i = entries[e];
+						if (seen[i] == query) {
+							continue;
+						}
+						seen[i] = query;
+						double distance = distance(i, x, y);
+						if (distance < bestDistance || (distance == bestDistance && i > best)) {
+							best = i;
+							bestDistance = distance;
+						}
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	private void nextQuery() {
+		query++;
+		if (query == 0) {
+			// after 2^32 queries, start counting again with no segment marked as seen
+			Arrays.fill(seen, 0);
+			query = 1;
+		}
+	}
+
+	/**
+	 * Helper method that determines whether a segment crosses or touches a rectangle: it does if the rectangle
+	 * overlaps the segment's bounding box and the segment's line does not pass wholly to one side of it.
+	 */
+	private boolean intersects(int i, double left, double bottom, double right, double top) {
+		double x0 = segments.startX[i];
+		double y0 = segments.startY[i];
+		double x1 = segments.endX[i];
+		double y1 = segments.endY[i];
+		if (Math.max(x0, x1) < left || Math.min(x0, x1) > right || Math.max(y0, y1) < bottom
+				|| Math.min(y0, y1) > top) {
+			return false;
+		}
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		double c1 = dx * (bottom - y0) - dy * (left - x0);
+		double c2 = dx * (bottom - y0) - dy * (right - x0);
+		double c3 = dx * (top - y0) - dy * (left - x0);
+		double c4 = dx * (top - y0) - dy * (right - x0);
+		return !((c1 > 0 && c2 > 0 && c3 > 0 && c4 > 0) || (c1 < 0 && c2 < 0 && c3 < 0 && c4 < 0));
+	}
+
+	/**
+	 * Helper method that computes the distance from a point to the nearest point of a segment.
+	 */
+	private double distance(int i, double x, double y) {
+		double x0 = segments.startX[i];
+		double y0 = segments.startY[i];
+		double dx = segments.endX[i] - x0;
+		double dy = segments.endY[i] - y0;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy) / lengthSquared));
+		return Math.hypot(x0 + t * dx - x, y0 + t * dy - y);
+	}
+}
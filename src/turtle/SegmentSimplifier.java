@@ -0,0 +1,341 @@
+/**
+ * This class simplifies a drawing after a program has run, so that drawing or exporting it costs as much as the
+ * lines that can be seen rather than the number of steps the turtle took. Segments of the same color that lie on
+ * the same straight line and overlap or touch are merged into one, which both joins runs of collinear segments
+ * and removes segments that retrace, or partly retrace, lines that are already drawn. A point, a segment of
+ * length 0, is kept once however many times it is drawn.
+ *
+ * The drawing is simplified in two passes. The first joins each segment to the one before it if it carries on
+ * from its end in the same direction, which is how a turtle draws a straight line in many steps. The second gives
+ * each remaining segment a key made of its color, the direction of its line and the line's distance from the
+ * origin, rounded to a small quantum so that segments the turtle reaches by different paths still share the
+ * line they are on, and groups the segments by key with a hash table. The segments of each line are then sorted
+ * by where they start along it and merged in one pass. Segments whose keys fall on either side of a rounding
+ * boundary are simply not merged.
+ *
+ * The ends of a merged segment are ends of the segments it was merged from, so no coordinate is moved, and a
+ * segment that is not merged is kept exactly as it was. The simplified segments come in the order in which
+ * their lines were first drawn. Where segments of different colors overlap, which one is drawn on top may change.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.util.Arrays;
+
+public class SegmentSimplifier {
+
+	/** Distances less than this, in turtle steps, are treated as equal */
+	static final double POSITION_QUANTUM = 1e-6;
+	/** Differences of direction, in radians, less than this are treated as equal */
+	static final double DIRECTION_QUANTUM = 1e-9;
+
+	// the unit vectors of recently seen direction keys: a drawing has few directions, and computing one is slow
+	private static final int CACHE_SIZE = 512;
+
+	private final SegmentStore segments;
+	private final int[] direction1;
+	private final int[] direction2;
+	private final long[] offset;
+	private final double[] low;
+	private final double[] high;
+	private final boolean[] reversed;
+
+	private final int[] cachedDirection1 = new int[CACHE_SIZE];
+	private final int[] cachedDirection2 = new int[CACHE_SIZE];
+	private final double[] cachedUnitX = new double[CACHE_SIZE];
+	private final double[] cachedUnitY = new double[CACHE_SIZE];
+
+	private SegmentSimplifier(SegmentStore segments) {
+		this.segments = segments;
+		int size = segments.size;
+		direction1 = new int[size];
+		direction2 = new int[size];
+		offset = new long[size];
+		low = new double[size];
+		high = new double[size];
+		reversed = new boolean[size];
+		Arrays.fill(cachedDirection1, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Simplifies a drawing. The given segments are not changed.
+	 * @param segments The segments of the drawing
+	 * @return A new SegmentStore with the simplified segments
+	 */
+	public static SegmentStore simplify(SegmentStore segments) {
+		return new SegmentSimplifier(joinRuns(segments)).mergeLines();
+	}
+
+	/**
+	 * Helper method that joins each segment to the one before it, if it starts where that one ends and goes on
+	 * in the same direction with the same color.
+	 * @param segments The segments of the drawing
+	 * @return A new SegmentStore with the joined segments, in the order they were drawn
+	 */
+	private static SegmentStore joinRuns(SegmentStore segments) {
+		SegmentStore joined = new SegmentStore(16);
+		int first = 0;
+		double endX = 0;
+		double endY = 0;
+		for (int i = 0; i < segments.size; i++) {
+			if (i > first && continues(segments, first, i, endX, endY)) {
+				endX = segments.endX[i];
+				endY = segments.endY[i];
+				continue;
+			}
+			if (i > 0) {
+				joined.add(segments.startX[first], segments.startY[first], endX, endY, segments.color(first));
+			}
+			first = i;
+			endX = segments.endX[i];
+			endY = segments.endY[i];
+		}
+		if (segments.size > 0) {
+			joined.add(segments.startX[first], segments.startY[first], endX, endY, segments.color(first));
+		}
+		return joined;
+	}
+
+	/**
+	 * Helper method that determines whether a segment carries on a run of segments.
+	 * @param segments The segments of the drawing
+	 * @param first The first segment of the run, whose direction the run has
+	 * @param i The segment that may carry on the run
+	 * @param endX The x-coordinate of the end of the run
+	 * @param endY The y-coordinate of the end of the run
+	 * @return True if the segment starts at the end of the run, in the run's direction and color
+	 */
+	private static boolean continues(SegmentStore segments, int first, int i, double endX, double endY) {
+		if (segments.color[i] != segments.color[first] || Math.abs(segments.startX[i] - endX) > POSITION_QUANTUM
+				|| Math.abs(segments.startY[i] - endY) > POSITION_QUANTUM) {
+			return false;
+		}
+		double runX = segments.endX[first] - segments.startX[first];
+		double runY = segments.endY[first] - segments.startY[first];
+		double x = segments.endX[i] - segments.startX[i];
+		double y = segments.endY[i] - segments.startY[i];
+		double lengths = Math.sqrt((runX * runX + runY * runY) * (x * x + y * y));
+		// a point neither starts nor carries on a run, and the cross product is the sine of the angle between them
+		return lengths > 0 && runX * x + runY * y > 0 && Math.abs(runX * y - runY * x) <= DIRECTION_QUANTUM * lengths;
+	}
+
+	/**
+	 * Helper method that merges the segments that lie on the same line and overlap or touch.
+	 * @return A new SegmentStore with the merged segments
+	 */
+	private SegmentStore mergeLines() {
+		int size = segments.size;
+		for (int i = 0; i < size; i++) {
+			computeKey(i);
+		}
+
+		// group the segments by key, keeping each group in the order it was drawn
+		int[] group = new int[size];
+		int groupCount = groupByKey(group);
+		int[] groupStart = new int[groupCount + 1];
+		for (int i = 0; i < size; i++) {
+			groupStart[group[i] + 1]++;
+		}
+		for (int g = 0; g < groupCount; g++) {
+			groupStart[g + 1] += groupStart[g];
+		}
+		int[] order = new int[size];
+		int[] filled = Arrays.copyOf(groupStart, groupCount);
+		for (int i = 0; i < size; i++) {
+			order[filled[group[i]]++] = i;
+		}
+
+		// merge the segments of each line, remembering the first segment each merged segment comes from
+		int[] scratch = new int[size];
+		int[] lowEnd = new int[size];
+		int[] highEnd = new int[size];
+		int[] earliestOf = new int[size];
+		long[] runs = new long[size];
+		int runCount = 0;
+		for (int g = 0; g < groupCount; g++) {
+			int end = groupStart[g + 1];
+			sort(order, scratch, groupStart[g], end);
+			int i = groupStart[g];
+			while (i < end) {
+				int lowSegment = order[i];
+				int highSegment = lowSegment;
+				int earliest = lowSegment;
+				double reach = high[lowSegment];
+				i++;
+				while (i < end && low[order[i]] <= reach + POSITION_QUANTUM) {
+					int next = order[i];
+					if (high[next] > reach) {
+						reach = high[next];
+						highSegment = next;
+					}
+					earliest = Math.min(earliest, next);
+					i++;
+				}
+				lowEnd[runCount] = lowSegment;
+				highEnd[runCount] = highSegment;
+				earliestOf[runCount] = earliest;
+				runs[runCount] = ((long) earliest << 32) | runCount;
+				runCount++;
+			}
+		}
+		Arrays.sort(runs, 0, runCount);
+
+		SegmentStore simplified = new SegmentStore(Math.max(1, runCount));
+		for (int r = 0; r < runCount; r++) {
+			int run = (int) runs[r];
+			int earliest = earliestOf[run];
+			int from = lowEnd[run];
+			int to = highEnd[run];
+			double lowX = reversed[from] ? segments.endX[from] : segments.startX[from];
+			double lowY = reversed[from] ? segments.endY[from] : segments.startY[from];
+			double highX = reversed[to] ? segments.startX[to] : segments.endX[to];
+			double highY = reversed[to] ? segments.startY[to] : segments.endY[to];
+			// the merged segment is drawn in the direction of the first one, so a segment that is not merged is unchanged
+			if (reversed[earliest]) {
+				simplified.add(highX, highY, lowX, lowY, segments.color(earliest));
+			} else {
+				simplified.add(lowX, lowY, highX, highY, segments.color(earliest));
+			}
+		}
+		return simplified;
+	}
+
+	/**
+	 * Helper method that computes the key of a segment, and where its ends are along its line.
+	 * @param i The index of the segment
+	 */
+	private void computeKey(int i) {
+		double x0 = segments.startX[i];
+		double y0 = segments.startY[i];
+		double dx = segments.endX[i] - x0;
+		double dy = segments.endY[i] - y0;
+		double lengthSquared = dx * dx + dy * dy;
+		if (lengthSquared == 0) {
+			// a point: it is keyed by its x-coordinate, and placed along the line by its y-coordinate
+			direction1[i] = Integer.MAX_VALUE;
+			offset[i] = quantize(x0, POSITION_QUANTUM);
+			low[i] = y0;
+			high[i] = y0;
+			return;
+		}
+
+		// the direction of a line, whichever way it is drawn, is the double of its angle, which has no boundary
+		// between directions that are nearly the same
+		direction1[i] = (int) Math.round((dx * dx - dy * dy) / lengthSquared / DIRECTION_QUANTUM);
+		direction2[i] = (int) Math.round(2 * dx * dy / lengthSquared / DIRECTION_QUANTUM);
+		// every segment with the same direction key is measured along the same unit vector
+		int slot = (direction1[i] * 31 + direction2[i]) & (CACHE_SIZE - 1);
+		if (cachedDirection1[slot] != direction1[i] || cachedDirection2[slot] != direction2[i]) {
+			double angle = Math.atan2(direction2[i], direction1[i]) / 2;
+			cachedDirection1[slot] = direction1[i];
+			cachedDirection2[slot] = direction2[i];
+			cachedUnitX[slot] = Math.cos(angle);
+			cachedUnitY[slot] = Math.sin(angle);
+		}
+		double unitX = cachedUnitX[slot];
+		double unitY = cachedUnitY[slot];
+		offset[i] = quantize(unitX * y0 - unitY * x0, POSITION_QUANTUM);
+
+		double start = unitX * x0 + unitY * y0;
+		double end = unitX * segments.endX[i] + unitY * segments.endY[i];
+		reversed[i] = end < start;
+		low[i] = Math.min(start, end);
+		high[i] = Math.max(start, end);
+	}
+
+	/**
+	 * Helper method that rounds a value to a whole number of quanta. A value too large to round is kept exactly,
+	 * so that it is only ever equal to itself.
+	 */
+	private static long quantize(double value, double quantum) {
+		double quanta = value / quantum;
+		if (Math.abs(quanta) < 0x1p62) {
+			return Math.round(quanta);
+		}
+		return Double.doubleToLongBits(value) | Long.MIN_VALUE;
+	}
+
+	/**
+	 * Helper method that numbers the distinct keys of the segments with an open-addressing hash table.
+	 * @param group Filled in with the number of each segment's key
+	 * @return The number of distinct keys
+	 */
+	private int groupByKey(int[] group) {
+		int size = segments.size;
+		int capacity = Integer.highestOneBit(Math.max(1, size)) << 2;
+		// each slot holds the segment that first had the key, plus 1, so that 0 marks an empty slot
+		int[] slots = new int[capacity];
+		int[] numbers = new int[capacity];
+		int groupCount = 0;
+		for (int i = 0; i < size; i++) {
+			int slot = hash(i) & (capacity - 1);
+			while (slots[slot] != 0 && !sameLine(slots[slot] - 1, i)) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			if (slots[slot] == 0) {
+				slots[slot] = i + 1;
+				numbers[slot] = groupCount++;
+			}
+			group[i] = numbers[slot];
+		}
+		return groupCount;
+	}
+
+	private int hash(int i) {
+		long h = segments.color[i];
+		h = h * 0x9E3779B97F4A7C15L + direction1[i];
+		h = h * 0x9E3779B97F4A7C15L + direction2[i];
+		h = h * 0x9E3779B97F4A7C15L + offset[i];
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private boolean sameLine(int a, int b) {
+		return segments.color[a] == segments.color[b] && direction1[a] == direction1[b]
+				&& direction2[a] == direction2[b] && offset[a] == offset[b];
+	}
+
+	/**
+	 * Helper method that sorts part of an array of segment indexes by where the segments start along their line,
+	 * with a merge sort, which needs no objects for the indexes and keeps segments that start at the same place
+	 * in the order they were drawn.
+	 * @param order The indexes to sort
+	 * @param scratch An array at least as long as order, for merging
+	 * @param from The first index to sort
+	 * @param to The index just past the last index to sort
+	 */
+	private void sort(int[] order, int[] scratch, int from, int to) {
+		if (to - from <= 16) {
+			for (int i = from + 1; i < to; i++) {
+				int segment = order[i];
+				int j = i;
+				while (j > from && low[order[j - 1]] > low[segment]) {
+					order[j] = order[j - 1];
+					j--;
+				}
+				order[j] = segment;
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		sort(order, scratch, from, middle);
+		sort(order, scratch, middle, to);
+		if (low[order[middle - 1]] <= low[order[middle]]) {
+			return;
+		}
+		System.arraycopy(order, from, scratch, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < middle && low[scratch[left]] <= low[scratch[right]])) {
+				order[i] = scratch[left++];
+			} else {
+				order[i] = scratch[right++];
+			}
+		}
+	}
+}
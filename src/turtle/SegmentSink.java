@@ -0,0 +1,25 @@
+/**
+ * This interface is implemented by anything that consumes the line segments of a drawing as they are produced,
+ * such as a renderer, a file writer, or something that keeps statistics. A DrawableTurtle made with a
+ * SegmentSink passes its segments on in batches instead of keeping the whole drawing in memory.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+public interface SegmentSink {
+	
+	/**
+	 * Consumes a batch of segments. The batch belongs to the caller and is reused once this method returns,
+	 * so the sink must not keep a reference to it.
+	 * @param batch The next segments of the drawing, in order
+	 */
+	public void accept(SegmentStore batch);
+	
+	/**
+	 * Called once after the last batch of the drawing has been passed to accept().
+	 */
+	public void close();
+}
@@ -0,0 +1,24 @@
+/**
+ * This interface is implemented by anything that holds the line segments of a finished drawing and can pass them
+ * on to a SegmentSink, such as a SegmentStore in memory or a SegmentFile on disk. It lets a drawing be rendered,
+ * exported or shown again without running the program that drew it.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+public interface SegmentSource {
+	
+	/**
+	 * @return The number of segments in the drawing
+	 */
+	public int size();
+	
+	/**
+	 * Passes every segment of the drawing to a sink in order, in batches, and then closes the sink.
+	 * @param sink The sink that consumes the segments
+	 */
+	public void replay(SegmentSink sink);
+}
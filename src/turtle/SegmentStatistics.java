@@ -0,0 +1,68 @@
+/**
+ * This class is a SegmentSink that keeps count of the segments of a drawing, their total length, and the
+ * bounding box that contains all of them, without keeping the segments themselves.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+public class SegmentStatistics implements SegmentSink {
+	
+	private long count = 0;
+	private double totalLength = 0;
+	private double minX = Double.POSITIVE_INFINITY;
+	private double minY = Double.POSITIVE_INFINITY;
+	private double maxX = Double.NEGATIVE_INFINITY;
+	private double maxY = Double.NEGATIVE_INFINITY;
+	
+	@Override
+	public void accept(SegmentStore batch) {
+		for (int i = 0; i < batch.size; i++) {
+			totalLength += batch.length(i);
+			minX = Math.min(minX, Math.min(batch.startX[i], batch.endX[i]));
+			minY = Math.min(minY, Math.min(batch.startY[i], batch.endY[i]));
+			maxX = Math.max(maxX, Math.max(batch.startX[i], batch.endX[i]));
+			maxY = Math.max(maxY, Math.max(batch.startY[i], batch.endY[i]));
+		}
+		count += batch.size;
+	}
+	
+	@Override
+	public void close() {
+	}
+	
+	public long getCount() {
+		return count;
+	}
+	
+	public double getTotalLength() {
+		return totalLength;
+	}
+	
+	public double getMinX() {
+		return minX;
+	}
+	
+	public double getMinY() {
+		return minY;
+	}
+	
+	public double getMaxX() {
+		return maxX;
+	}
+	
+	public double getMaxY() {
+		return maxY;
+	}
+	
+	@Override
+	public String toString() {
+		if (count == 0) {
+			return "0 segments";
+		}
+		return count + " segments, total length " + totalLength
+				+ ", bounds (" + minX + ", " + minY + ") to (" + maxX + ", " + maxY + ")";
+	}
+}
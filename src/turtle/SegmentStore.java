@@ -0,0 +1,176 @@
+/**
+ * This class stores a growable sequence of line segments as parallel arrays of primitives: one array for
+ * each coordinate, and one for the ordinal of each segment's PenColor. A segment takes up 33 bytes this way,
+ * instead of the LineSegment and two Points that would otherwise be allocated for it. LineSegment objects
+ * are only created when a segment is read through get() or the asList() view.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SegmentStore implements SegmentSource {
+	
+	private static final PenColor[] COLORS = PenColor.values();
+	
+	double[] startX;
+	double[] startY;
+	double[] endX;
+	double[] endY;
+	byte[] color;
+	int size;
+	
+	/**
+	 * Creates a new, empty SegmentStore object
+	 */
+	public SegmentStore() {
+		this(16);
+	}
+	
+	/**
+	 * Creates a new, empty SegmentStore object with room for the given number of segments
+	 * @param capacity The number of segments to make room for
+	 */
+	public SegmentStore(int capacity) {
+		startX = new double[capacity];
+		startY = new double[capacity];
+		endX = new double[capacity];
+		endY = new double[capacity];
+		color = new byte[capacity];
+	}
+	
+	/**
+	 * Adds a segment to the end of the store.
+	 * @param x0 The x-coordinate of the start of the segment
+	 * @param y0 The y-coordinate of the start of the segment
+	 * @param x1 The x-coordinate of the end of the segment
+	 * @param y1 The y-coordinate of the end of the segment
+	 * @param penColor The color of the segment
+	 */
+	public void add(double x0, double y0, double x1, double y1, PenColor penColor) {
+		ensureCapacity(size + 1);
+		startX[size] = x0;
+		startY[size] = y0;
+		endX[size] = x1;
+		endY[size] = y1;
+		color[size] = (byte) penColor.ordinal();
+		size++;
+	}
+	
+	/**
+	 * Makes sure the store has room for the given number of segments without growing again.
+	 * @param capacity The number of segments to make room for
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > color.length) {
+			int newCapacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(capacity, color.length * 2L));
+			startX = Arrays.copyOf(startX, newCapacity);
+			startY = Arrays.copyOf(startY, newCapacity);
+			endX = Arrays.copyOf(endX, newCapacity);
+			endY = Arrays.copyOf(endY, newCapacity);
+			color = Arrays.copyOf(color, newCapacity);
+		}
+	}
+	
+	/**
+	 * Adds all of the segments of another store to the end of this one.
+	 * @param other The store whose segments are added
+	 */
+	public void addAll(SegmentStore other) {
+		ensureCapacity(size + other.size);
+		System.arraycopy(other.startX, 0, startX, size, other.size);
+		System.arraycopy(other.startY, 0, startY, size, other.size);
+		System.arraycopy(other.endX, 0, endX, size, other.size);
+		System.arraycopy(other.endY, 0, endY, size, other.size);
+		System.arraycopy(other.color, 0, color, size, other.size);
+		size += other.size;
+	}
+	
+	/**
+	 * Removes all of the segments from the store, keeping its arrays for reuse.
+	 */
+	public void clear() {
+		size = 0;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Passes the whole store to a sink as a single batch, and then closes the sink.
+	 * @param sink The sink that consumes the segments
+	 */
+	@Override
+	public void replay(SegmentSink sink) {
+		sink.accept(this);
+		sink.close();
+	}
+	
+	public double startX(int i) {
+		return startX[i];
+	}
+	
+	public double startY(int i) {
+		return startY[i];
+	}
+	
+	public double endX(int i) {
+		return endX[i];
+	}
+	
+	public double endY(int i) {
+		return endY[i];
+	}
+	
+	public PenColor color(int i) {
+		return COLORS[color[i]];
+	}
+	
+	/**
+	 * Computes the length of a segment.
+	 * @param i The index of the segment
+	 * @return The length of the segment
+	 */
+	public double length(int i) {
+		double dx = endX[i] - startX[i];
+		double dy = endY[i] - startY[i];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+	
+	/**
+	 * Creates a LineSegment for a segment in the store.
+	 * @param i The index of the segment
+	 * @return A new LineSegment with the segment's coordinates and color
+	 */
+	public LineSegment get(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+		}
+		return new LineSegment(startX[i], startY[i], endX[i], endY[i], COLORS[color[i]]);
+	}
+	
+	/**
+	 * Returns a read-only list view of the store, which creates a LineSegment each time an element is read.
+	 * @return A list of the segments in the store
+	 */
+	public List<LineSegment> asList() {
+		return new AbstractList<LineSegment>() {
+			@Override
+			public LineSegment get(int index) {
+				return SegmentStore.this.get(index);
+			}
+			
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * This class assigns each variable name in a Turtle Graphics program a small integer id, so that
+ * the compact Abstract Syntax Tree can refer to variables without storing their names.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class SymbolTable {
+	
+	private HashMap<String, Integer> ids = new HashMap<String, Integer>();
+	private ArrayList<String> names = new ArrayList<String>();
+	
+	/**
+	 * Returns the id of the given variable name, assigning it the next free id if it has not been seen before.
+	 * @param name The name of the variable
+	 * @return The id of the variable
+	 */
+	public int intern(String name) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+		}
+		return id;
+	}
+	
+	/**
+	 * Returns the name of the variable with the given id.
+	 * @param id The id of the variable
+	 * @return The name of the variable
+	 */
+	public String name(int id) {
+		return names.get(id);
+	}
+	
+	/**
+	 * Returns the number of distinct variables in the table.
+	 * @return The number of variables
+	 */
+	public int size() {
+		return names.size();
+	}
+}
@@ -0,0 +1,39 @@
+/**
+ * Enumeration of the kinds of tokens in a Turtle Graphics program. Each kind also
+ * records the GrammarNode type it is reported as, and the keyword text if it has a fixed spelling.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+enum TokenType {
+	PROGRAM_END("TERMINAL", "programEnd"),
+	BEGIN("TERMINAL", "begin"),
+	END("TERMINAL", "end"),
+	LOOP("TERMINAL", "loop"),
+	FORWARD("COMMAND", "forward"),
+	TURN("COMMAND", "turn"),
+	EQUALS("TERMINAL", "="),
+	NUMBER("NUMBER", null),
+	VARIABLE("VARIABLE", null),
+	INVALID_VARIABLE("INVALID_VARIABLE", null);
+	
+	final String category;
+	final String keyword;
+	
+	TokenType(String category, String keyword) {
+		this.category = category;
+		this.keyword = keyword;
+	}
+	
+	/**
+	 * Checks whether tokens of this kind are made of letters and digits, starting with a letter,
+	 * which is what the parser accepts as a variable name.
+	 * @return True if the token has the shape of a variable name
+	 */
+	boolean isWord() {
+		return this == VARIABLE || (keyword != null && this != EQUALS);
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * This class runs many Turtle Graphics programs at the same time with one TurtleEngine. Each program runs as its
+ * own task with its own turtle. By default the tasks run on virtual threads when the Java runtime has them, so
+ * that a batch of any size gets a thread per program cheaply, and on a pool with one thread per processor
+ * otherwise.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+public class TurtleBatchExecutor implements AutoCloseable {
+
+	/**
+	 * The outcome of running one program of a batch.
+	 */
+	public static class Result<T extends Turtle> {
+		public final String file;
+		public final T turtle;
+		public final Throwable error;
+
+		Result(String file, T turtle, Throwable error) {
+			this.file = file;
+			this.turtle = turtle;
+			this.error = error;
+		}
+
+		/**
+		 * @return True if the program ran to the end, false if it had a syntax error or failed while running
+		 */
+		public boolean succeeded() {
+			return error == null;
+		}
+	}
+
+	private final TurtleEngine engine;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+
+	/**
+	 * Creates a new TurtleBatchExecutor object that runs programs on virtual threads if they are available, and on
+	 * one thread per processor otherwise.
+	 * @param engine The engine that runs the programs
+	 */
+	public TurtleBatchExecutor(TurtleEngine engine) {
+		this(engine, newDefaultExecutor(), true);
+	}
+
+	/**
+	 * Creates a new TurtleBatchExecutor object that runs programs on the given executor, which it does not shut down.
+	 * @param engine The engine that runs the programs
+	 * @param executor The executor that runs each program as a task
+	 */
+	public TurtleBatchExecutor(TurtleEngine engine, ExecutorService executor) {
+		this(engine, executor, false);
+	}
+
+	private TurtleBatchExecutor(TurtleEngine engine, ExecutorService executor, boolean ownsExecutor) {
+		this.engine = engine;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	/**
+	 * Helper method that makes an executor that starts a virtual thread for each task. Virtual threads are looked
+	 * up by reflection, since this project is built for Java 8.
+	 * @return A virtual-thread executor, or a fixed pool of one thread per processor if there are no virtual threads
+	 */
+	private static ExecutorService newDefaultExecutor() {
+		try {
+			Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtual.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		}
+	}
+
+	/**
+	 * Starts running a program against a turtle.
+	 * @param file The file that contains the turtle program
+	 * @param turtle The turtle that carries out the program's commands, which no other task may use
+	 * @return A Future that gives the result once the program has run
+	 */
+	public <T extends Turtle> Future<Result<T>> submit(String file, T turtle) {
+		return executor.submit(() -> {
+			try {
+				engine.run(file, turtle);
+				return new Result<T>(file, turtle, null);
+			} catch (RuntimeException e) {
+				return new Result<T>(file, turtle, e);
+			}
+		});
+	}
+
+	/**
+	 * Runs a list of programs at the same time, each against a new turtle, and waits for all of them to finish.
+	 * @param files The files that contain the turtle programs
+	 * @param turtles Makes the turtle for each program
+	 * @return The results, in the same order as the files
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public <T extends Turtle> List<Result<T>> runAll(List<String> files, Supplier<T> turtles)
+			throws InterruptedException {
+		List<Future<Result<T>>> futures = new ArrayList<Future<Result<T>>>(files.size());
+		for (String file : files) {
+			futures.add(submit(file, turtles.get()));
+		}
+		List<Result<T>> results = new ArrayList<Result<T>>(files.size());
+		for (Future<Result<T>> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				// submit() turns every exception into a Result, so only errors such as OutOfMemoryError get here
+				throw new IllegalStateException("Running a program failed", e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Stops the executor once the programs already submitted have finished, if this object made the executor.
+	 */
+	@Override
+	public void close() {
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,280 @@
+/**
+ * This class measures the lexer, parser, interpreter, renderer, segment index and vector exporter on synthetic
+ * programs and drawings of several sizes, the programs written by ProgramGenerator, so that changes in speed and
+ * scaling can be tracked between versions.
+ *
+ * Each benchmark is run repeatedly for a warm-up period, so that the JIT compiler has optimized it, and then for a
+ * measurement period. The time and the number of bytes allocated per operation are printed for each benchmark.
+ * Every benchmark returns a value computed from its results, which is added to a checksum, so that the work cannot
+ * be optimized away.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TurtleBenchmark {
+
+	/**
+	 * One operation to be measured.
+	 */
+	interface Operation {
+		long run() throws Exception;
+	}
+
+	private static class Benchmark {
+		final String name;
+		final Operation operation;
+
+		Benchmark(String name, Operation operation) {
+			this.name = name;
+			this.operation = operation;
+		}
+	}
+
+	private static final int[] PROGRAM_SIZES = {100, 10000, 1000000};
+	private static final int NESTING_DEPTH = 500;
+	private static final int[] LOOP_STEPS = {1000, 1000000};
+	private static final int FORWARD_STEPS = 1000000;
+	private static final int RENDER_SEGMENTS = 100000;
+	private static final int INDEX_SEGMENTS = 2000000;
+	private static final int INDEX_QUERIES = 1000;
+	private static final int EXPORT_SEGMENTS = 1000000;
+
+	private final List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+	private long checksum = 0;
+
+	/**
+	 * Main method.
+	 * The benchmarks can be run with an optional first parameter: only benchmarks whose names contain it are run.
+	 * An optional second parameter gives the number of seconds each benchmark is warmed up and measured for (1 by default).
+	 */
+	public static void main(String args[]) throws IOException {
+		String filter = args.length > 0 ? args[0] : "";
+		double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+
+		TurtleBenchmark suite = new TurtleBenchmark();
+		suite.addAll();
+		System.out.printf("%-40s %15s %15s%n", "benchmark", "ns/op", "bytes/op");
+		for (Benchmark benchmark : suite.benchmarks) {
+			if (benchmark.name.contains(filter)) {
+				suite.measure(benchmark, (long) (seconds * 1e9));
+			}
+		}
+		System.out.println("checksum " + suite.checksum);
+	}
+
+	/**
+	 * Helper method that adds every benchmark to the suite.
+	 */
+	private void addAll() throws IOException {
+		for (int size : PROGRAM_SIZES) {
+			String file = ProgramGenerator.toFile(ProgramGenerator.flat(size, size));
+			add("lexer.scanner." + size, () -> lex(new TurtleLexer(file)));
+			add("lexer.mapped." + size, () -> lex(new MappedTurtleLexer(file)));
+			add("parser.checkProgram." + size, () -> new TurtleParser(file).checkProgram().children.size());
+			add("parser.checkCompactProgram." + size, () -> new TurtleParser(file).checkCompactProgram().root.children.length);
+		}
+
+		String nested = ProgramGenerator.toFile(ProgramGenerator.nested(NESTING_DEPTH));
+		add("parser.checkProgram.nested" + NESTING_DEPTH, () -> new TurtleParser(nested).checkProgram().children.size());
+		add("parser.checkCompactProgram.nested" + NESTING_DEPTH,
+				() -> new TurtleParser(nested).checkCompactProgram().root.children.length);
+
+		for (int steps : LOOP_STEPS) {
+			String file = ProgramGenerator.toFile(ProgramGenerator.loopHeavy(steps));
+			add("interpreter.run." + steps, () -> run(file, true, false));
+			add("interpreter.runWithoutMemoizing." + steps, () -> run(file, false, false));
+			add("interpreter.runParallel." + steps, () -> run(file, true, true));
+		}
+
+		add("turtle.forward." + FORWARD_STEPS, () -> {
+			DrawableTurtle turtle = new DrawableTurtle();
+			for (int i = 0; i < FORWARD_STEPS; i++) {
+				turtle.forward(i & 7);
+				turtle.turn(i % 360);
+			}
+			return turtle.lines.size();
+		});
+
+		SegmentStore segments = randomWalk(RENDER_SEGMENTS, 40);
+		add("renderer.draw." + RENDER_SEGMENTS, () -> render(segments, false));
+		add("renderer.drawParallel." + RENDER_SEGMENTS, () -> render(segments, true));
+		SegmentStore diagonals = diagonals(RENDER_SEGMENTS / 5);
+		add("renderer.draw.diagonals." + diagonals.size(), () -> render(diagonals, false));
+		add("renderer.drawParallel.diagonals." + diagonals.size(), () -> render(diagonals, true));
+
+		// the index is only built when one of its benchmarks is run
+		SegmentIndex[] index = new SegmentIndex[1];
+		add("index.build." + INDEX_SEGMENTS, () -> {
+			index[0] = new SegmentIndex(randomWalk(INDEX_SEGMENTS, 1));
+			return index[0].size();
+		});
+		add("index.query." + INDEX_SEGMENTS + ".x" + INDEX_QUERIES, () -> {
+			if (index[0] == null) {
+				index[0] = new SegmentIndex(randomWalk(INDEX_SEGMENTS, 1));
+			}
+			Random random = new Random(INDEX_QUERIES);
+			long found = 0;
+			for (int i = 0; i < INDEX_QUERIES; i++) {
+				double x = random.nextDouble() * 480 - 240;
+				double y = random.nextDouble() * 480 - 240;
+				found += index[0].query(x, y, x + 10, y + 10).length;
+			}
+			return found;
+		});
+		add("index.nearest." + INDEX_SEGMENTS + ".x" + INDEX_QUERIES, () -> {
+			if (index[0] == null) {
+				index[0] = new SegmentIndex(randomWalk(INDEX_SEGMENTS, 1));
+			}
+			Random random = new Random(INDEX_QUERIES);
+			long found = 0;
+			for (int i = 0; i < INDEX_QUERIES; i++) {
+				found += index[0].nearest(random.nextDouble() * 500 - 250, random.nextDouble() * 500 - 250);
+			}
+			return found;
+		});
+
+		// every segment of the walk changes color, so this writes one path per segment
+		SegmentStore walk = randomWalk(EXPORT_SEGMENTS, 1);
+		File exportFile = File.createTempFile("benchmark", ".svg");
+		exportFile.deleteOnExit();
+		add("export.svg." + EXPORT_SEGMENTS, () -> export(walk, exportFile, VectorExporter.Format.SVG));
+		add("export.postscript." + EXPORT_SEGMENTS, () -> export(walk, exportFile, VectorExporter.Format.POSTSCRIPT));
+	}
+
+	private void add(String name, Operation operation) {
+		benchmarks.add(new Benchmark(name, operation));
+	}
+
+	/**
+	 * Helper method that runs a benchmark for a warm-up period and then a measurement period, and prints the
+	 * average time and allocation per operation during the measurement period.
+	 * @param benchmark The benchmark to run
+	 * @param nanos The length of each period, in nanoseconds
+	 */
+	private void measure(Benchmark benchmark, long nanos) {
+		try {
+			repeat(benchmark.operation, nanos);
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			long operations = repeat(benchmark.operation, nanos);
+			long elapsed = System.nanoTime() - start;
+			bytes = allocatedBytes() - bytes;
+			System.out.printf("%-40s %15.1f %15s%n", benchmark.name, (double) elapsed / operations,
+					bytes < 0 ? "n/a" : Long.toString(bytes / operations));
+		} catch (Exception e) {
+			System.out.println(benchmark.name + " failed");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Helper method that runs an operation over and over until the given time has passed, and at least once.
+	 * @return The number of times the operation was run
+	 */
+	private long repeat(Operation operation, long nanos) throws Exception {
+		long end = System.nanoTime() + nanos;
+		long operations = 0;
+		do {
+			checksum += operation.run();
+			operations++;
+		} while (System.nanoTime() < end);
+		return operations;
+	}
+
+	/**
+	 * Helper method that returns the number of bytes allocated by the current thread so far, or -1 if the
+	 * virtual machine cannot tell.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static long lex(TurtleLexer lexer) {
+		long tokens = 0;
+		while (lexer.hasNext()) {
+			tokens += lexer.nextToken().ordinal();
+		}
+		return tokens;
+	}
+
+	/**
+	 * Helper method that runs a program the way TurtleMain does, without showing the drawing.
+	 */
+	private static long run(String file, boolean memoizeLoops, boolean parallelLoops) {
+		DrawableTurtle turtle = new DrawableTurtle();
+		TurtleInterpreter interpreter = new TurtleInterpreter(
+				TurtleCompiler.compile(new TurtleParser(file).checkCompactProgram()), turtle);
+		interpreter.setMemoizeLoops(memoizeLoops);
+		interpreter.setParallelLoops(parallelLoops);
+		interpreter.run();
+		return turtle.lines.size();
+	}
+
+	private static long render(SegmentStore segments, boolean parallel) {
+		TurtleRenderer renderer = new TurtleRenderer(DrawableTurtle.canvasWidth, DrawableTurtle.canvasHeight);
+		renderer.setParallel(parallel);
+		renderer.drawSegments(segments);
+		return renderer.getPixels()[renderer.getPixels().length / 2];
+	}
+
+	private static long export(SegmentStore segments, File file, VectorExporter.Format format) throws IOException {
+		VectorExporter.export(segments, file.getPath(), format, DrawableTurtle.canvasWidth, DrawableTurtle.canvasHeight);
+		return file.length();
+	}
+
+	/**
+	 * Helper method that draws long segments between random points on opposite edges of the canvas, which cross
+	 * many tiles of a parallel renderer.
+	 * @param count The number of segments
+	 */
+	private static SegmentStore diagonals(int count) {
+		Random random = new Random(count);
+		PenColor[] colors = PenColor.values();
+		SegmentStore segments = new SegmentStore(count);
+		for (int i = 0; i < count; i++) {
+			double a = random.nextDouble() * 500 - 250;
+			double b = random.nextDouble() * 500 - 250;
+			if (i % 2 == 0) {
+				segments.add(-250, a, 250, b, colors[i % colors.length]);
+			} else {
+				segments.add(a, -250, b, 250, colors[i % colors.length]);
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * Helper method that draws a random walk that stays on the canvas, with segments of every color.
+	 * @param count The number of segments
+	 * @param step The standard deviation of the length of a step along each axis
+	 */
+	private static SegmentStore randomWalk(int count, double step) {
+		Random random = new Random(count);
+		PenColor[] colors = PenColor.values();
+		SegmentStore segments = new SegmentStore(count);
+		double x = 0;
+		double y = 0;
+		for (int i = 0; i < count; i++) {
+			double newX = Math.max(-250, Math.min(250, x + random.nextGaussian() * step));
+			double newY = Math.max(-250, Math.min(250, y + random.nextGaussian() * step));
+			segments.add(x, y, newX, newY, colors[i % colors.length]);
+			x = newX;
+			y = newY;
+		}
+		return segments;
+	}
+}
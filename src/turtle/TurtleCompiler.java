@@ -0,0 +1,182 @@
+/**
+ * This class compiles the Abstract Syntax Tree of a Turtle Graphics program into a CompiledProgram, a flat
+ * array of instructions that TurtleInterpreter can run without looking at the tree again. It can compile
+ * either the compact tree made by TurtleParser.checkCompactProgram() or the tree of GrammarNodes made by
+ * TurtleParser.checkProgram().
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+import java.util.Arrays;
+
+public class TurtleCompiler {
+	
+	private int[] code = new int[64];
+	private int size = 0;
+	private SymbolTable symbols;
+	private int depth = 0;
+	private int maxDepth = 0;
+	
+	private TurtleCompiler(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+	
+	/**
+	 * Compiles a program in its compact form.
+	 * @param program The program to compile
+	 * @return The compiled program
+	 */
+	public static CompiledProgram compile(TurtleProgram program) {
+		TurtleCompiler compiler = new TurtleCompiler(program.symbols);
+		compiler.compileStatements(program.root.children);
+		return compiler.finish();
+	}
+	
+	/**
+	 * Compiles a program from the tree of GrammarNodes returned by TurtleParser.checkProgram().
+	 * @param root The root of the program's Abstract Syntax Tree
+	 * @return The compiled program
+	 */
+	public static CompiledProgram compile(GrammarNode root) {
+		TurtleCompiler compiler = new TurtleCompiler(new SymbolTable());
+		compiler.compileGrammarNode(root);
+		return compiler.finish();
+	}
+	
+	/**
+	 * Helper method that emits the instructions for a list of statements.
+	 * @param statements The statements to compile
+	 */
+	private void compileStatements(AstNode[] statements) {
+		for (AstNode statement : statements) {
+			switch (statement.kind) {
+			case FORWARD:
+				emitOperand(CompiledProgram.FORWARD_NUMBER, CompiledProgram.FORWARD_VARIABLE, statement);
+				break;
+			case TURN:
+				emitOperand(CompiledProgram.TURN_NUMBER, CompiledProgram.TURN_VARIABLE, statement);
+				break;
+			case ASSIGNMENT:
+				emit(CompiledProgram.ASSIGN, statement.variable, statement.number);
+				break;
+			case LOOP:
+				int loop = size;
+				emitOperand(CompiledProgram.LOOP_NUMBER, CompiledProgram.LOOP_VARIABLE, statement);
+				enterLoop();
+				compileStatements(statement.children);
+				exitLoop(loop);
+				break;
+			default:
+				throw new IllegalArgumentException("Unexpected " + statement.kind + " node");
+			}
+		}
+	}
+	
+	/**
+	 * Helper method that emits the instructions for a GrammarNode and its children.
+	 * @param node The node to compile
+	 */
+	private void compileGrammarNode(GrammarNode node) {
+		switch (node.type) {
+		case "loop":
+			if (node.data != null) {
+				// the loop keyword itself
+				return;
+			}
+			int loop = size;
+			emitGrammarOperand(CompiledProgram.LOOP_NUMBER, CompiledProgram.LOOP_VARIABLE, node.children.get(1));
+			enterLoop();
+			compileGrammarNode(node.children.get(2));
+			exitLoop(loop);
+			return;
+		case "command":
+			GrammarNode first = node.children.get(0);
+			if (first.type.equals("forward")) {
+				emitGrammarOperand(CompiledProgram.FORWARD_NUMBER, CompiledProgram.FORWARD_VARIABLE, node.children.get(1));
+			} else if (first.type.equals("turn")) {
+				emitGrammarOperand(CompiledProgram.TURN_NUMBER, CompiledProgram.TURN_VARIABLE, node.children.get(1));
+			} else {
+				// assignment: variable, =, number
+				emit(CompiledProgram.ASSIGN, symbols.intern(first.children.get(0).data),
+						Integer.parseInt(first.children.get(2).data));
+			}
+			return;
+		default:
+			for (GrammarNode child : node.children) {
+				compileGrammarNode(child);
+			}
+		}
+	}
+	
+	/**
+	 * Helper method that emits an instruction whose operand is a number or a variable.
+	 * @param numberOpcode The opcode to use if the operand is a number
+	 * @param variableOpcode The opcode to use if the operand is a variable
+	 * @param node The loop or command whose operand is emitted
+	 */
+	private void emitOperand(int numberOpcode, int variableOpcode, AstNode node) {
+		if (node.hasVariable()) {
+			emit(variableOpcode, node.variable);
+		} else {
+			emit(numberOpcode, node.number);
+		}
+	}
+	
+	/**
+	 * Helper method that emits an instruction whose operand is a NUMBER or variable GrammarNode.
+	 * @param numberOpcode The opcode to use if the operand is a number
+	 * @param variableOpcode The opcode to use if the operand is a variable
+	 * @param operand The node of the operand
+	 */
+	private void emitGrammarOperand(int numberOpcode, int variableOpcode, GrammarNode operand) {
+		if (operand.type.equals("NUMBER")) {
+			emit(numberOpcode, Integer.parseInt(operand.data));
+		} else {
+			emit(variableOpcode, symbols.intern(operand.data));
+		}
+	}
+	
+	/**
+	 * Helper method that finishes the LOOP instruction just emitted, leaving room for its exit index,
+	 * and gives the loop the counter of the next nesting depth.
+	 */
+	private void enterLoop() {
+		emit(0, depth);
+		depth++;
+		maxDepth = Math.max(maxDepth, depth);
+	}
+	
+	/**
+	 * Helper method that emits the NEXT instruction at the end of a loop body, and fills in the LOOP instruction's exit index.
+	 * @param loop The index of the LOOP instruction
+	 */
+	private void exitLoop(int loop) {
+		depth--;
+		emit(CompiledProgram.NEXT, depth, loop + 4);
+		code[loop + 2] = size;
+	}
+	
+	private void emit(int... values) {
+		if (size + values.length > code.length) {
+			code = Arrays.copyOf(code, Math.max(code.length * 2, size + values.length));
+		}
+		for (int value : values) {
+			code[size++] = value;
+		}
+	}
+	
+	/**
+	 * Helper method that builds the CompiledProgram from the instructions emitted so far.
+	 * @return The compiled program
+	 */
+	private CompiledProgram finish() {
+		String[] names = new String[symbols.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = symbols.name(i);
+		}
+		return new CompiledProgram(Arrays.copyOf(code, size), names, maxDepth);
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * This class parses, compiles and runs Turtle Graphics programs. It keeps no state about the programs it runs:
+ * every call parses into a new TurtleProgram and runs with a new TurtleInterpreter, so one TurtleEngine can run
+ * any number of programs at the same time on different threads, as long as each run has its own turtle.
+ * Its settings should be chosen before it is shared between threads.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.util.List;
+
+public class TurtleEngine {
+
+	private boolean memoizeLoops = true;
+	private boolean parallelLoops = false;
+	private CompileCache cache = null;
+	private boolean optimize = false;
+
+	/**
+	 * Sets whether loops whose bodies assign no variables are repeated geometrically. This is on by default.
+	 * @param memoizeLoops True to repeat loop bodies geometrically, false to run every iteration
+	 * @see TurtleInterpreter#setMemoizeLoops(boolean)
+	 */
+	public void setMemoizeLoops(boolean memoizeLoops) {
+		this.memoizeLoops = memoizeLoops;
+	}
+
+	/**
+	 * Sets whether the repetitions of large memoized loops are generated in parallel. This is off by default.
+	 * @param parallelLoops True to generate large loops in parallel, false to generate them on the calling thread
+	 * @see TurtleInterpreter#setParallelLoops(boolean)
+	 */
+	public void setParallelLoops(boolean parallelLoops) {
+		this.parallelLoops = parallelLoops;
+	}
+
+	/**
+	 * Sets the cache that compile() looks programs up in, so that a program compiled before is not lexed and
+	 * parsed again. There is no cache by default.
+	 * @param cache The cache to use, which may be shared with other engines, or null to compile every program
+	 */
+	public void setCache(CompileCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Sets whether programs are optimized by a TurtleOptimizer before they are compiled. This is off by default,
+	 * because an optimized program may draw a straight line in fewer segments, and carries out fewer turtle
+	 * commands, than the program as written.
+	 * @param optimize True to optimize programs, false to compile them as they are written
+	 */
+	public void setOptimize(boolean optimize) {
+		this.optimize = optimize;
+	}
+
+	boolean isOptimizing() {
+		return optimize;
+	}
+
+	/**
+	 * Checks a turtle program for syntax errors and returns its compact form.
+	 * @param file The file that contains the turtle program
+	 * @return The compact form of the program
+	 * @throws IllegalArgumentException if the program contains a syntax error, with the error as its message
+	 * @throws java.io.UncheckedIOException if the file cannot be read
+	 */
+	public TurtleProgram parse(String file) {
+		return parse(new MappedTurtleLexer(file));
+	}
+
+	/**
+	 * Checks a turtle program for syntax errors and returns its compact form.
+	 * @param lexer The lexer that tokenizes the turtle program
+	 * @return The compact form of the program
+	 * @throws IllegalArgumentException if the program contains a syntax error, with the error as its message
+	 */
+	public TurtleProgram parse(TurtleLexer lexer) {
+		TurtleParser parser = new TurtleParser(lexer);
+		parser.setPrintErrors(false);
+		TurtleProgram program = parser.checkCompactProgram();
+		if (program == null) {
+			throw new IllegalArgumentException(parser.getErrorMessage());
+		}
+		return program;
+	}
+
+	/**
+	 * Checks a turtle program for all of its syntax errors at once, without printing them.
+	 * @param file The file that contains the turtle program
+	 * @return The syntax errors, in the order they appear in the program, or an empty list if the program is valid
+	 * @throws java.io.UncheckedIOException if the file cannot be read
+	 */
+	public List<Diagnostic> validate(String file) {
+		return new TurtleValidator(file).validate();
+	}
+
+	/**
+	 * Checks a turtle program for syntax errors and compiles it. The compiled program is never changed by
+	 * running it, so it can be run many times, and on several threads at once. If the engine has a cache,
+	 * the program is looked up there first.
+	 * @param file The file that contains the turtle program
+	 * @return The compiled program
+	 * @throws IllegalArgumentException if the program contains a syntax error, with the error as its message
+	 * @throws java.io.UncheckedIOException if the file cannot be read
+	 */
+	public CompiledProgram compile(String file) {
+		if (cache != null) {
+			return cache.compile(file, this);
+		}
+		return compile(parse(file));
+	}
+
+	/**
+	 * Compiles a program that has already been parsed, optimizing it first if the engine optimizes programs.
+	 * @param program The program to compile
+	 * @return The compiled program, which holds the optimizer's report if it was optimized
+	 */
+	public CompiledProgram compile(TurtleProgram program) {
+		if (!optimize) {
+			return TurtleCompiler.compile(program);
+		}
+		TurtleOptimizer optimizer = new TurtleOptimizer();
+		CompiledProgram compiled = TurtleCompiler.compile(optimizer.optimize(program));
+		return new CompiledProgram(compiled.code, compiled.variableNames, compiled.loopDepth, optimizer.getReport());
+	}
+
+	/**
+	 * Runs a compiled program against a turtle.
+	 * @param program The program to run
+	 * @param turtle The turtle that carries out the program's commands
+	 */
+	public void execute(CompiledProgram program, Turtle turtle) {
+		TurtleInterpreter interpreter = new TurtleInterpreter(program, turtle);
+		interpreter.setMemoizeLoops(memoizeLoops);
+		interpreter.setParallelLoops(parallelLoops);
+		interpreter.run();
+	}
+
+	/**
+	 * Parses, compiles and runs a turtle program against a turtle.
+	 * @param file The file that contains the turtle program
+	 * @param turtle The turtle that carries out the program's commands
+	 * @throws IllegalArgumentException if the program contains a syntax error, with the error as its message
+	 * @throws java.io.UncheckedIOException if the file cannot be read
+	 */
+	public void run(String file, Turtle turtle) {
+		execute(compile(file), turtle);
+	}
+}
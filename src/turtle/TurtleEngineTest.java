@@ -0,0 +1,276 @@
+/**
+ * This class is used to test the TurtleEngine and TurtleBatchExecutor classes. It checks that programs run at the
+ * same time on one engine draw exactly what they draw when run one at a time, that syntax errors are reported
+ * in the result of the program that has them, that the compile cache finds programs in memory and on disk, and that
+ * optimized programs leave the turtle where the programs as written do.
+ * 
+ * @author Patrick Liem
+ */
+package turtle;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TurtleEngineTest {
+	
+	private static final String[] FILES = {"starProgram.txt", "testProgramStep1.txt", "testProgramStep2.txt",
+			"testProgramStep3.txt", "testcases/nestedLoop.txt", "testcases/periodicLoop.txt"};
+	
+	@Test
+	public void testBatchMatchesSequential() throws InterruptedException {
+		TurtleEngine engine = new TurtleEngine();
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			for (String file : FILES) {
+				files.add(file);
+			}
+		}
+		
+		List<TurtleBatchExecutor.Result<DrawableTurtle>> results;
+		try (TurtleBatchExecutor executor = new TurtleBatchExecutor(engine)) {
+			results = executor.runAll(files, DrawableTurtle::new);
+		}
+		
+		assertEquals(files.size(), results.size());
+		for (int i = 0; i < files.size(); i++) {
+			TurtleBatchExecutor.Result<DrawableTurtle> result = results.get(i);
+			assertTrue(result.succeeded());
+			assertEquals(files.get(i), result.file);
+			
+			DrawableTurtle expected = new DrawableTurtle();
+			engine.run(files.get(i), expected);
+			assertEquals(expected.lines.size(), result.turtle.lines.size());
+			for (int j = 0; j < expected.lines.size(); j++) {
+				assertEquals(expected.segments.startX[j], result.turtle.segments.startX[j], 0);
+				assertEquals(expected.segments.startY[j], result.turtle.segments.startY[j], 0);
+				assertEquals(expected.segments.endX[j], result.turtle.segments.endX[j], 0);
+				assertEquals(expected.segments.endY[j], result.turtle.segments.endY[j], 0);
+			}
+			assertEquals(expected.currentHeading, result.turtle.currentHeading, 0);
+		}
+	}
+	
+	@Test
+	public void testCompileCache() throws IOException {
+		String directory = Files.createTempDirectory("turtlecache").toString();
+		TurtleEngine engine = new TurtleEngine();
+		CompileCache cache = new CompileCache(2, directory);
+		engine.setCache(cache);
+		
+		CompiledProgram star = engine.compile("starProgram.txt");
+		assertSame(star, engine.compile("starProgram.txt"));
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		
+		// the star program is now the least recently used, so it is dropped to make room for a third program
+		engine.compile("testProgramStep1.txt");
+		engine.compile("testProgramStep2.txt");
+		assertEquals(2, cache.size());
+		assertEquals(3, cache.getMisses());
+		
+		// and is then loaded from the directory instead of being parsed again
+		CompiledProgram loaded = engine.compile("starProgram.txt");
+		assertNotSame(star, loaded);
+		assertEquals(1, cache.getDiskHits());
+		assertEquals(3, cache.getMisses());
+		assertArrayEquals(star.code, loaded.code);
+		assertArrayEquals(star.variableNames, loaded.variableNames);
+		assertEquals(star.loopDepth, loaded.loopDepth);
+		
+		// a new cache over the same directory starts with every program on disk
+		engine.setCache(new CompileCache(10, directory));
+		assertArrayEquals(TurtleCompiler.compile(new TurtleParser("testProgramStep2.txt").checkCompactProgram()).code,
+				engine.compile("testProgramStep2.txt").code);
+		
+		try {
+			engine.compile("testcases/equals.txt");
+			fail("expected a syntax error");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("Syntax Error"));
+		}
+		
+		// a program that cannot be saved is still compiled, and the failure is counted
+		File notDirectory = new File(directory, "file");
+		Files.write(notDirectory.toPath(), new byte[0]);
+		CompileCache unsaved = new CompileCache(1, notDirectory.getPath());
+		engine.setCache(unsaved);
+		assertArrayEquals(star.code, engine.compile("starProgram.txt").code);
+		assertEquals(1, unsaved.getSaveFailures());
+		
+		for (File file : new File(directory).listFiles()) {
+			file.delete();
+		}
+		new File(directory).delete();
+	}
+	
+	@Test
+	public void testDamagedCompiledProgram() throws IOException {
+		CompiledProgram nested = TurtleCompiler.compile(new TurtleParser("testcases/nestedLoop.txt").checkCompactProgram());
+		CompiledProgram loaded = CompileCache.readProgram(write(nested));
+		assertArrayEquals(nested.code, loaded.code);
+		assertEquals(nested.loopDepth, loaded.loopDepth);
+		
+		// a loop whose NEXT jumps somewhere other than the start of its body
+		int[] code = nested.code.clone();
+		for (int pc = 0; pc < code.length; pc += CompiledProgram.length(code[pc])) {
+			if (code[pc] == CompiledProgram.NEXT) {
+				code[pc + 2]--;
+				break;
+			}
+		}
+		assertDamaged(write(new CompiledProgram(code, nested.variableNames, nested.loopDepth)));
+		assertDamaged(write(new CompiledProgram(nested.code, nested.variableNames, nested.loopDepth + 1)));
+		assertDamaged(write(new CompiledProgram(new int[] {CompiledProgram.FORWARD_VARIABLE, 1}, new String[] {"x"}, 0)));
+		assertDamaged(write(new CompiledProgram(new int[] {CompiledProgram.NEXT + 1, 0}, new String[0], 0)));
+		assertDamaged(write(new CompiledProgram(new int[] {CompiledProgram.ASSIGN, 0}, new String[] {"x"}, 0)));
+		
+		// the magic number and version, no loops, and then 2^31 - 1 and -1 variables
+		byte[] header = {0x54, 0x50, 0x43, 0x31, 2, 0};
+		byte[] huge = Arrays.copyOf(header, header.length + 5);
+		byte[] negative = Arrays.copyOf(header, header.length + 5);
+		for (int i = header.length; i < huge.length; i++) {
+			huge[i] = (byte) 0xFF;
+			negative[i] = (byte) 0xFF;
+		}
+		huge[huge.length - 1] = 0x07;
+		negative[negative.length - 1] = 0x0F;
+		assertDamaged(huge);
+		assertDamaged(negative);
+		
+		// a damaged file in the cache is compiled again instead of being loaded
+		String directory = Files.createTempDirectory("turtlecache").toString();
+		TurtleEngine engine = new TurtleEngine();
+		engine.setCache(new CompileCache(1, directory));
+		CompiledProgram star = engine.compile("starProgram.txt");
+		File[] saved = new File(directory).listFiles();
+		assertEquals(1, saved.length);
+		Files.write(saved[0].toPath(), huge);
+		CompileCache cache = new CompileCache(1, directory);
+		engine.setCache(cache);
+		assertArrayEquals(star.code, engine.compile("starProgram.txt").code);
+		assertEquals(1, cache.getMisses());
+		
+		for (File file : new File(directory).listFiles()) {
+			file.delete();
+		}
+		new File(directory).delete();
+	}
+	
+	private static byte[] write(CompiledProgram program) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CompileCache.writeProgram(new DataOutputStream(bytes), program);
+		return bytes.toByteArray();
+	}
+	
+	private static void assertDamaged(byte[] data) {
+		try {
+			CompileCache.readProgram(data);
+			fail("a damaged program was loaded");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testSyntaxErrors() throws InterruptedException {
+		List<String> files = new ArrayList<String>();
+		files.add("testcases/equals.txt");
+		files.add("starProgram.txt");
+		
+		List<TurtleBatchExecutor.Result<DrawableTurtle>> results;
+		try (TurtleBatchExecutor executor = new TurtleBatchExecutor(new TurtleEngine())) {
+			results = executor.runAll(files, DrawableTurtle::new);
+		}
+		
+		assertFalse(results.get(0).succeeded());
+		assertTrue(results.get(0).error instanceof IllegalArgumentException);
+		assertTrue(results.get(0).error.getMessage().startsWith("Syntax Error: Expected \"=\""));
+		assertTrue(results.get(1).succeeded());
+	}
+	
+	@Test
+	public void testEmptyBlockErrors() {
+		String[] programs = {"begin end programEnd", "begin loop 3 begin end end programEnd"};
+		TurtleEngine engine = new TurtleEngine();
+		for (String program : programs) {
+			try {
+				engine.parse(new MappedTurtleLexer(ByteBuffer.wrap(program.getBytes(StandardCharsets.US_ASCII))));
+				fail("\"" + program + "\" was accepted");
+			} catch (IllegalArgumentException e) {
+				assertNotNull(e.getMessage());
+				assertEquals("Syntax Error: Block has no statements.", e.getMessage());
+			}
+		}
+	}
+	
+	@Test
+	public void testOptimizer() {
+		TurtleEngine engine = new TurtleEngine();
+		TurtleOptimizer optimizer = new TurtleOptimizer();
+		
+		optimizer.optimize(engine.parse("testcases/constantFolding.txt"));
+		TurtleOptimizer.Report report = optimizer.getReport();
+		assertEquals(22, report.instructionsBefore);
+		assertEquals(9, report.instructionsAfter);
+		assertEquals(13, report.getEliminated());
+		assertEquals(4, report.constantsPropagated);
+		assertEquals(4, report.assignmentsRemoved);
+		assertEquals(2, report.turnsFolded);
+		assertEquals(1, report.noOpTurnsRemoved);
+		assertEquals(1, report.forwardsMerged);
+		assertEquals(2, report.loopsRemoved);
+		
+		// the two turns of 60 degrees are folded into one
+		optimizer.optimize(engine.parse("testProgramStep2.txt"));
+		assertEquals(1, optimizer.getReport().getEliminated());
+		assertEquals(1, optimizer.getReport().turnsFolded);
+		
+		String[] files = {"testcases/constantFolding.txt", "starProgram.txt", "testProgramStep2.txt",
+				"testProgramStep3.txt", "testcases/nestedLoop.txt", "testcases/periodicLoop.txt"};
+		TurtleEngine optimizing = new TurtleEngine();
+		optimizing.setOptimize(true);
+		for (String file : files) {
+			DrawableTurtle expected = new DrawableTurtle();
+			engine.run(file, expected);
+			DrawableTurtle actual = new DrawableTurtle();
+			optimizing.run(file, actual);
+			assertEquals(expected.currentX, actual.currentX, 1e-9);
+			assertEquals(expected.currentY, actual.currentY, 1e-9);
+			assertEquals(expected.currentHeading, actual.currentHeading, 0);
+		}
+	}
+	
+	@Test
+	public void testOptimizerReport() throws IOException {
+		TurtleEngine engine = new TurtleEngine();
+		assertNull(engine.compile("testcases/constantFolding.txt").report);
+		
+		engine.setOptimize(true);
+		assertEquals(13, engine.compile("testcases/constantFolding.txt").report.getEliminated());
+		
+		// the report is kept with the program, in memory and on disk
+		String directory = Files.createTempDirectory("turtlecache").toString();
+		engine.setCache(new CompileCache(1, directory));
+		TurtleOptimizer.Report report = engine.compile("testcases/constantFolding.txt").report;
+		assertSame(report, engine.compile("testcases/constantFolding.txt").report);
+		engine.setCache(new CompileCache(1, directory));
+		assertEquals(report.toString(), engine.compile("testcases/constantFolding.txt").report.toString());
+		
+		for (File file : new File(directory).listFiles()) {
+			file.delete();
+		}
+		new File(directory).delete();
+	}
+}
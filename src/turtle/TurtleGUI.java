@@ -7,9 +7,16 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Container;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.swing.GroupLayout;
@@ -18,10 +25,27 @@ import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JSlider;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 /**
  * Displays turtle graphics in a window on the screen.
+ * 
+ * The drawing can be dragged to pan and zoomed with the mouse wheel. Only the segments that cross the
+ * visible part of the drawing are drawn again when the view changes, and segments shorter than a pixel
+ * are drawn as a single pixel, so a view of a very large drawing costs about as much as the pixels
+ * it covers.
+ * 
+ * The drawing is done on a back canvas, and the window shows a copy of it. Once a frame is drawn,
+ * only the rectangle of pixels that changed is copied to the front, on the event thread, and only
+ * that rectangle is repainted, so the window never shows a half-drawn frame.
+ * 
+ * The slider under the drawing moves the animation to any action. The window keeps copies of the canvas
+ * at a few evenly spaced segments, so a jump draws at most the segments between the nearest copy and the
+ * action it jumps to.
  */
 public class TurtleGUI extends JFrame {
 
@@ -35,6 +59,11 @@ public class TurtleGUI extends JFrame {
 
     private static final long MILLIS_PER_FRAME = (long) (1000.0 / ROUGH_FPS);
 
+    private static final double ZOOM_PER_WHEEL_CLICK = 1.25;
+
+    private static final int MAX_CHECKPOINTS = 32;
+    private static final int MIN_SEGMENTS_PER_CHECKPOINT = 1024;
+
     private int canvasWidth;
     private int canvasHeight;
     private int actionListSize;
@@ -43,25 +72,76 @@ public class TurtleGUI extends JFrame {
     private AnimationThread currAnimationThread;
 
     private JButton runButton;
+    private JButton fitButton;
+    private JButton resetButton;
     private JLabel currentActionLabel;
     private JLabel currentAction;
+    private JSlider timelineSlider;
+    private boolean showingProgress;
     private BufferedImage canvas;
+    private int[] pixels;
+    private BufferedImage screen;
+    private int[] screenPixels;
     private Graphics2D graphics;
     private JLabel drawLabel;
 
     private List<Action> actionList;
 
-    private int originX;
-    private int originY;
+    // the canvas, the viewport and the progress of the animation are only changed while holding the canvas lock
+    private final SegmentStore segments;
+    private final SegmentIndex index;
+    private final ActionTimeline timeline;
+    private final Viewport viewport;
+    private int completedSegments = 0;
+    private int currentSegment = -1;
+    private double currentFraction = 0;
+    private int completedActions = 0;
+
+    // checkpoints[k] is a copy of the canvas with segments before k * segmentsPerCheckpoint drawn in the
+    // current view, or null if there is none yet; the first is never needed, since it is a blank canvas
+    private final int segmentsPerCheckpoint;
+    private final int[][] checkpoints;
+    private int dragX;
+    private int dragY;
+
+    // the part of the canvas that has changed since it was last copied to the screen
+    private int dirtyLeft;
+    private int dirtyTop;
+    private int dirtyRight;
+    private int dirtyBottom;
+
+    private final Runnable showProgress = new Runnable() {
+        public void run() {
+            showChanges();
+            showProgress();
+        }
+    };
 
     public TurtleGUI(List<Action> actionList, int canvasWidth, int canvasHeight) {
+        this(actionList, segmentsOf(actionList), canvasWidth, canvasHeight);
+    }
+
+    /**
+     * Make a window for a drawing whose segments are already stored.
+     * 
+     * @param actionList the actions of the drawing
+     * @param segments the segments of the forward actions, in order
+     * @param canvasWidth width of the canvas in pixels
+     * @param canvasHeight height of the canvas in pixels
+     */
+    TurtleGUI(List<Action> actionList, SegmentStore segments, int canvasWidth, int canvasHeight) {
         super("TurtleGUI");
 
         this.canvasWidth = canvasWidth;
         this.canvasHeight = canvasHeight;
         this.actionListSize = actionList.size();
-        this.originX = (canvasWidth - 1) / 2;
-        this.originY = (canvasHeight - 1) / 2;
+        this.segments = segments;
+        this.index = new SegmentIndex(segments);
+        this.timeline = new ActionTimeline(actionList, LENGTH_OF_A_TURN);
+        this.viewport = new Viewport(canvasWidth, canvasHeight);
+        this.segmentsPerCheckpoint = Math.max(MIN_SEGMENTS_PER_CHECKPOINT,
+                (segments.size() + MAX_CHECKPOINTS - 1) / MAX_CHECKPOINTS);
+        this.checkpoints = new int[segments.size() / segmentsPerCheckpoint + 1][];
 
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         Container cp = getContentPane();
@@ -74,6 +154,14 @@ public class TurtleGUI extends JFrame {
         runButton.setName("runButton");
         runButton.setText("Run!");
 
+        fitButton = new JButton();
+        fitButton.setName("fitButton");
+        fitButton.setText("Fit");
+
+        resetButton = new JButton();
+        resetButton.setName("resetButton");
+        resetButton.setText("Reset view");
+
         isRunning = false;
 
         currentActionLabel = new JLabel();
@@ -84,13 +172,21 @@ public class TurtleGUI extends JFrame {
         currentAction.setName("currentAction");
         currentAction.setText("STOPPED");
 
+        timelineSlider = new JSlider(0, actionListSize, 0);
+        timelineSlider.setName("timelineSlider");
+
         canvas = new BufferedImage(canvasWidth, canvasHeight, BufferedImage.TYPE_INT_RGB);
         graphics = canvas.createGraphics();
         graphics.setBackground(canvasBGColor);
         graphics.clearRect(0, 0, canvasWidth, canvasHeight);
         graphics.setStroke(new BasicStroke(1.0f));
+        pixels = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        screen = new BufferedImage(canvasWidth, canvasHeight, BufferedImage.TYPE_INT_RGB);
+        screenPixels = ((DataBufferInt) screen.getRaster().getDataBuffer()).getData();
+        markDirty(0, 0, canvasWidth, canvasHeight);
+        showChanges();
 
-        drawLabel = new JLabel(new ImageIcon(canvas));
+        drawLabel = new JLabel(new ImageIcon(screen));
         drawLabel.setName("drawLabel");
 
         this.actionList = actionList;
@@ -101,7 +197,9 @@ public class TurtleGUI extends JFrame {
                 if (!isRunning) {
                     runButton.setText("Stop");
                     isRunning = true;
-                    currAnimationThread = new AnimationThread();
+                    // play on from the slider, or from the start once the drawing is finished
+                    int start = timelineSlider.getValue() < actionListSize ? timelineSlider.getValue() : 0;
+                    currAnimationThread = new AnimationThread(start);
                     currAnimationThread.execute();
                 } else {
                     currAnimationThread.cancel(true);
@@ -109,22 +207,317 @@ public class TurtleGUI extends JFrame {
             }
         });
 
+        fitButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                synchronized (canvas) {
+                    viewport.fit(index.getLeft(), index.getBottom(), index.getRight(), index.getTop());
+                }
+                redraw();
+            }
+        });
+
+        resetButton.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                synchronized (canvas) {
+                    viewport.reset();
+                }
+                redraw();
+            }
+        });
+
+        timelineSlider.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                if (showingProgress) {
+                    return;
+                }
+                if (isRunning) {
+                    currAnimationThread.cancel(true);
+                }
+                seek(timelineSlider.getValue());
+            }
+        });
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+                dragY = e.getY();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                synchronized (canvas) {
+                    viewport.pan(e.getX() - dragX, e.getY() - dragY);
+                }
+                dragX = e.getX();
+                dragY = e.getY();
+                redraw();
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                // the canvas is centered in the label
+                double x = e.getX() - (drawLabel.getWidth() - TurtleGUI.this.canvasWidth) / 2;
+                double y = e.getY() - (drawLabel.getHeight() - TurtleGUI.this.canvasHeight) / 2;
+                synchronized (canvas) {
+                    viewport.zoom(Math.pow(ZOOM_PER_WHEEL_CLICK, -e.getPreciseWheelRotation()), x, y);
+                }
+                redraw();
+            }
+        };
+        drawLabel.addMouseListener(mouse);
+        drawLabel.addMouseMotionListener(mouse);
+        drawLabel.addMouseWheelListener(mouse);
+
         layout.setHorizontalGroup(layout.createParallelGroup()
                 .addComponent(drawLabel)
+                .addComponent(timelineSlider)
                 .addGroup(layout.createSequentialGroup()
                         .addComponent(runButton)
+                        .addComponent(fitButton)
+                        .addComponent(resetButton)
                         .addComponent(currentActionLabel)
                         .addComponent(currentAction)));
         layout.setVerticalGroup(layout.createSequentialGroup()
                 .addComponent(drawLabel)
+                .addComponent(timelineSlider)
                 .addGroup(layout.createParallelGroup(Alignment.CENTER)
                         .addComponent(runButton)
+                        .addComponent(fitButton)
+                        .addComponent(resetButton)
                         .addComponent(currentActionLabel)
                         .addComponent(currentAction)));
 
         pack();
     }
 
+    /**
+     * Store the segments of the forward actions in a list of actions, in order.
+     */
+    private static SegmentStore segmentsOf(List<Action> actionList) {
+        SegmentStore segments = new SegmentStore();
+        for (Action action : actionList) {
+            if (action.lineSeg != null) {
+                LineSegment line = action.lineSeg;
+                segments.add(line.start.x, line.start.y, line.end.x, line.end.y, line.color);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Draw the canvas again for the current view: every segment the animation has finished that
+     * crosses the view, in order, and as much of the segment it is drawing as it has drawn.
+     */
+    private void redraw() {
+        synchronized (canvas) {
+            // the checkpoints were drawn in the old view
+            Arrays.fill(checkpoints, null);
+            graphics.clearRect(0, 0, canvasWidth, canvasHeight);
+            markDirty(0, 0, canvasWidth, canvasHeight);
+            for (int i : index.query(viewport.getLeft(), viewport.getBottom(), viewport.getRight(), viewport.getTop())) {
+                if (i >= completedSegments) {
+                    break;
+                }
+                drawSegment(segments.startX(i), segments.startY(i), segments.endX(i), segments.endY(i),
+                        segments.color(i));
+            }
+            if (currentSegment >= 0) {
+                drawPart(currentSegment, 0, currentFraction);
+            }
+        }
+        showChanges();
+    }
+
+    /**
+     * Move the drawing to just before an action, as if the animation had stopped there, and show it.
+     * Must be called on the event thread.
+     * 
+     * @param action the index of the action, or the number of actions for the finished drawing
+     */
+    private void seek(int action) {
+        synchronized (canvas) {
+            moveTo(action);
+        }
+        showChanges();
+        showProgress();
+    }
+
+    /**
+     * Draw the canvas as it is just before an action: from what is already drawn if that is on the way
+     * there, and otherwise from the last checkpoint before it. The caller must hold the canvas lock.
+     * 
+     * @param action the index of the action, or the number of actions for the finished drawing
+     */
+    private void moveTo(int action) {
+        int target = timeline.segmentsBefore(action);
+        int checkpoint = Math.min(target / segmentsPerCheckpoint, checkpoints.length - 1);
+        while (checkpoint > 0 && checkpoints[checkpoint] == null) {
+            checkpoint--;
+        }
+        int checkpointSegment = checkpoint * segmentsPerCheckpoint;
+        if (completedSegments < checkpointSegment || completedSegments > target
+                || (completedSegments == target && currentSegment >= 0)) {
+            if (checkpoint == 0) {
+                graphics.clearRect(0, 0, canvasWidth, canvasHeight);
+            } else {
+                System.arraycopy(checkpoints[checkpoint], 0, pixels, 0, pixels.length);
+            }
+            markDirty(0, 0, canvasWidth, canvasHeight);
+            completedSegments = checkpointSegment;
+            currentSegment = -1;
+        }
+        finishSegments(target);
+        completedActions = action;
+    }
+
+    /**
+     * Draw the rest of the segment being drawn and the segments after it, up to a segment, copying the
+     * canvas at every checkpoint on the way that has no copy yet. The caller must hold the canvas lock.
+     * 
+     * @param target the index of the first segment to leave undrawn
+     */
+    private void finishSegments(int target) {
+        while (completedSegments < target) {
+            drawPart(completedSegments, currentSegment >= 0 ? currentFraction : 0, 1);
+            completedSegments++;
+            currentSegment = -1;
+            int checkpoint = completedSegments / segmentsPerCheckpoint;
+            if (completedSegments % segmentsPerCheckpoint == 0 && checkpoint < checkpoints.length
+                    && checkpoints[checkpoint] == null) {
+                checkpoints[checkpoint] = pixels.clone();
+            }
+        }
+    }
+
+    /**
+     * Show which action the animation has reached, on the slider and the current action label. Must be
+     * called on the event thread.
+     */
+    private void showProgress() {
+        int action;
+        synchronized (canvas) {
+            action = completedActions;
+        }
+        showingProgress = true;
+        timelineSlider.setValue(action);
+        showingProgress = false;
+        setCurrentAction(action < actionListSize ? (action + 1) + ". " + actionList.get(action) : "FINISHED");
+    }
+
+    /**
+     * Add a rectangle of pixels to the part of the canvas that has changed, clipped to the canvas.
+     * The caller must hold the canvas lock.
+     * 
+     * @param left the smallest x-coordinate of the rectangle
+     * @param top the smallest y-coordinate of the rectangle
+     * @param right one more than the largest x-coordinate of the rectangle
+     * @param bottom one more than the largest y-coordinate of the rectangle
+     */
+    private void markDirty(int left, int top, int right, int bottom) {
+        if (dirtyLeft >= dirtyRight || dirtyTop >= dirtyBottom) {
+            dirtyLeft = Math.max(left, 0);
+            dirtyTop = Math.max(top, 0);
+            dirtyRight = Math.min(right, canvasWidth);
+            dirtyBottom = Math.min(bottom, canvasHeight);
+        } else {
+            dirtyLeft = Math.max(Math.min(dirtyLeft, left), 0);
+            dirtyTop = Math.max(Math.min(dirtyTop, top), 0);
+            dirtyRight = Math.min(Math.max(dirtyRight, right), canvasWidth);
+            dirtyBottom = Math.min(Math.max(dirtyBottom, bottom), canvasHeight);
+        }
+    }
+
+    /**
+     * Copy the part of the canvas that has changed to the screen and repaint it. Must be called on
+     * the event thread, which is the only thread that reads the screen.
+     */
+    private void showChanges() {
+        Rectangle changed;
+        synchronized (canvas) {
+            if (dirtyLeft >= dirtyRight || dirtyTop >= dirtyBottom) {
+                return;
+            }
+            changed = new Rectangle(dirtyLeft, dirtyTop, dirtyRight - dirtyLeft, dirtyBottom - dirtyTop);
+            for (int y = dirtyTop; y < dirtyBottom; y++) {
+                System.arraycopy(pixels, y * canvasWidth + dirtyLeft, screenPixels, y * canvasWidth + dirtyLeft,
+                        changed.width);
+            }
+            dirtyRight = dirtyLeft;
+        }
+        if (drawLabel != null) {
+            // the screen is centered in the label
+            changed.translate((drawLabel.getWidth() - canvasWidth) / 2, (drawLabel.getHeight() - canvasHeight) / 2);
+            drawLabel.repaint(changed);
+        }
+    }
+
+    /**
+     * Draw part of a segment onto the canvas. The caller must hold the canvas lock.
+     * 
+     * @param i index of the segment
+     * @param from fraction of the segment where the part starts
+     * @param to fraction of the segment where the part ends
+     */
+    private void drawPart(int i, double from, double to) {
+        double dx = segments.endX(i) - segments.startX(i);
+        double dy = segments.endY(i) - segments.startY(i);
+        drawSegment(segments.startX(i) + dx * from, segments.startY(i) + dy * from,
+                segments.startX(i) + dx * to, segments.startY(i) + dy * to, segments.color(i));
+    }
+
+    /**
+     * Draw a segment of the drawing onto the canvas in the current view. A segment shorter than a
+     * pixel is drawn as that pixel, and a long one is first clipped to the canvas. The caller must hold
+     * the canvas lock.
+     */
+    private void drawSegment(double x0, double y0, double x1, double y1, PenColor color) {
+        double startX = viewport.toScreenX(x0);
+        double startY = viewport.toScreenY(y0);
+        double endX = viewport.toScreenX(x1);
+        double endY = viewport.toScreenY(y1);
+        if (Math.abs(endX - startX) < 1 && Math.abs(endY - startY) < 1) {
+            int x = (int) Math.floor(startX);
+            int y = (int) Math.floor(startY);
+            if (x >= 0 && x < canvasWidth && y >= 0 && y < canvasHeight) {
+                pixels[y * canvasWidth + x] = color.color.getRGB() & 0xFFFFFF;
+                markDirty(x, y, x + 1, y + 1);
+            }
+            return;
+        }
+
+        // clip to just outside the canvas, so that the coordinates fit in an int
+        double dx = endX - startX;
+        double dy = endY - startY;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {startX + 2, canvasWidth + 1 - startX, startY + 2, canvasHeight + 1 - startY};
+        double from = 0;
+        double to = 1;
+        for (int k = 0; k < 4; k++) {
+            if (p[k] == 0) {
+                if (q[k] < 0) {
+                    return;
+                }
+            } else if (p[k] < 0) {
+                from = Math.max(from, q[k] / p[k]);
+            } else {
+                to = Math.min(to, q[k] / p[k]);
+            }
+        }
+        if (from > to) {
+            return;
+        }
+        int fromX = (int) (startX + dx * from);
+        int fromY = (int) (startY + dy * from);
+        int toX = (int) (startX + dx * to);
+        int toY = (int) (startY + dy * to);
+        graphics.setPaint(color.color);
+        graphics.drawLine(fromX, fromY, toX, toY);
+        // a line covers the pixels of both its ends, and the stroke may touch their neighbours
+        markDirty(Math.min(fromX, toX) - 1, Math.min(fromY, toY) - 1, Math.max(fromX, toX) + 2,
+                Math.max(fromY, toY) + 2);
+    }
+
     public void stopAnimation() {
         currentAction.setText("STOPPED");
         isRunning = false;
@@ -149,8 +542,14 @@ public class TurtleGUI extends JFrame {
 
     private class AnimationThread extends SwingWorker<Void, Void> {
 
-        AnimationThread() {
+        private final int startAction;
+
+        /**
+         * @param startAction the index of the action to play from
+         */
+        AnimationThread(int startAction) {
             super();
+            this.startAction = startAction;
         }
 
         @Override
@@ -160,92 +559,89 @@ public class TurtleGUI extends JFrame {
         }
 
         private void animate() {
-            graphics.clearRect(0, 0, canvasWidth, canvasHeight);
-            drawLabel.repaint();
-
-            // first, calculate the total length of line segments and turns,
-            // in order to allocate drawtime proportionally later
-
-            double totalLength = 0;
-            for (Action a : actionList) {
-                if (a.type == ActionType.TURN) {
-                    totalLength += LENGTH_OF_A_TURN;
-                } else if (a.type == ActionType.FORWARD) {
-                    totalLength += a.lineSeg.length();
+            synchronized (canvas) {
+                // the slider may already have moved the drawing somewhere else and stopped this thread
+                if (isCancelled()) {
+                    stopAnimation();
+                    return;
                 }
+                moveTo(startAction);
+            }
+            if (!show()) {
+                stopAnimation();
+                return;
             }
 
-            // now, draw the animation
+            // draw the animation one frame at a time: each frame draws every action, or part of an
+            // action, that the elapsed time has reached, and shows it once. Frames are timed from
+            // the start of the drawing, so a slow frame makes the next one draw more instead of
+            // making the drawing late.
 
-            double cumulativeLength = 0;
+            double totalLength = timeline.getTotalLength();
             long initialTime = System.currentTimeMillis();
-            for (int i = 0; i < actionListSize; i++) {
-                if (isCancelled()) {
+            if (totalLength > 0) {
+                initialTime -= (long) (timeline.lengthBefore(startAction) / totalLength * MILLIS_PER_DRAWING);
+            }
+            for (long frame = 1; !isCancelled(); frame++) {
+                long elapsedTime = System.currentTimeMillis() - initialTime;
+                int next = actionListSize;
+                double targetLength = totalLength;
+                if (elapsedTime < MILLIS_PER_DRAWING) {
+                    targetLength = totalLength * elapsedTime / MILLIS_PER_DRAWING;
+                    next = timeline.actionsWithin(targetLength);
+                }
+
+                synchronized (canvas) {
+                    // the slider may have moved the drawing since this thread was stopped
+                    if (isCancelled()) {
+                        break;
+                    }
+
+                    // finish the actions this frame has passed
+                    finishSegments(timeline.segmentsBefore(next));
+                    completedActions = next;
+
+                    // and draw as much of the next line as this frame has reached
+                    if (next < actionListSize && timeline.drawsSegment(next)) {
+                        double fraction = (targetLength - timeline.lengthBefore(next))
+                                / (timeline.lengthBefore(next + 1) - timeline.lengthBefore(next));
+                        drawPart(completedSegments, currentSegment >= 0 ? currentFraction : 0, fraction);
+                        currentSegment = completedSegments;
+                        currentFraction = fraction;
+                    }
+                }
+                if (!show() || next == actionListSize) {
                     break;
                 }
-                Action action = actionList.get(i);
-                setCurrentAction((i + 1) + ". " + action);
-                if (action.lineSeg != null) {
-                    long startTime = (long) (initialTime + cumulativeLength / totalLength * MILLIS_PER_DRAWING);
-                    cumulativeLength += action.lineSeg.length();
-                    long endTime = (long) (initialTime + cumulativeLength / totalLength * MILLIS_PER_DRAWING);
-                    draw(action.lineSeg, startTime, endTime);
-                } else {
-                    cumulativeLength += LENGTH_OF_A_TURN;
-                    long drawTime = (long) (initialTime + cumulativeLength / totalLength * MILLIS_PER_DRAWING - System.currentTimeMillis());
-                    if (drawTime > 0) {
-                        try {
-                            Thread.sleep((long) drawTime);
-                        } catch (InterruptedException e) {
-                        }
+
+                // skip the frames this one has overrun
+                frame = Math.max(frame, (System.currentTimeMillis() - initialTime) / MILLIS_PER_FRAME);
+                long sleepTime = initialTime + frame * MILLIS_PER_FRAME - System.currentTimeMillis();
+                if (sleepTime > 0) {
+                    try {
+                        Thread.sleep(sleepTime);
+                    } catch (InterruptedException e) {
+                        break;
                     }
                 }
             }
             stopAnimation();
         }
 
-        private void draw(LineSegment lineSeg, long initialTime, long endTime) {
-            long drawTime = endTime - initialTime;
-
-            double initX = originX + lineSeg.start.x;
-            double initY = originY - lineSeg.start.y;
-
-            double finalX = originX + lineSeg.end.x;
-            double finalY = originY - lineSeg.end.y;
-
-            int fromX = (int) initX;
-            int fromY = (int) initY;
-
-            boolean abort = false;
-            long elapsedTime = System.currentTimeMillis() - initialTime;
-
-            graphics.setPaint(lineSeg.color.color);
-
-            while (!abort && elapsedTime + MILLIS_PER_FRAME < drawTime) {
-                // while we have time remaining for this action
-                double fractionDone = Math.max(elapsedTime * 1.0 / drawTime, 0);
-                int toX = (int) Math.round(initX * (1 - fractionDone) + finalX * fractionDone);
-                int toY = (int) Math.round(initY * (1 - fractionDone) + finalY * fractionDone);
-                graphics.drawLine(fromX, fromY, toX, toY);
-                drawLabel.repaint();
-
-                try {
-                    Thread.sleep(MILLIS_PER_FRAME);
-                } catch (InterruptedException e) {
-                    abort = true;
-                }
-
-                // update
-                fromX = toX;
-                fromY = toY;
-
-                elapsedTime = System.currentTimeMillis() - initialTime;
-            }
-
-            // finish the line if we're still not done
-            if (!abort && (fromX != finalX || fromY != finalY)) {
-                graphics.drawLine(fromX, fromY, (int) finalX, (int) finalY);
-                drawLabel.repaint();
+        /**
+         * Show what this thread has drawn, waiting until the event thread has copied it to the screen
+         * so that the next frame cannot be drawn over it before it is shown.
+         * 
+         * @return false if the animation was stopped while waiting
+         */
+        private boolean show() {
+            try {
+                SwingUtilities.invokeAndWait(showProgress);
+                return true;
+            } catch (InterruptedException e) {
+                return false;
+            } catch (InvocationTargetException e) {
+                throw new RuntimeException(e.getCause());
             }
         }
     }
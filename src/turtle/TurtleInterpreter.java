@@ -0,0 +1,181 @@
+/**
+ * This class runs a CompiledProgram against a Turtle. Variables are kept in an int array indexed by their ids,
+ * and loop counters in an int array indexed by nesting depth, so running an instruction never allocates memory
+ * or parses text, and loops run in place no matter how many times they repeat.
+ * 
+ * When the turtle is a DrawableTurtle, a loop whose body does not assign any variables has the same effect on
+ * every iteration, relative to where the turtle starts it. Such a loop body is run only once, from the origin,
+ * and the turtle then repeats the recorded result by rotating and translating it (see DrawableTurtle.repeat).
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+public class TurtleInterpreter {
+	
+	private final int[] code;
+	private final String[] variableNames;
+	private final Turtle turtle;
+	
+	private final int[] variables;
+	private final boolean[] assigned;
+	private final int[] counters;
+	private final boolean[] memoizable;
+	
+	private boolean memoizeLoops = true;
+	private boolean parallelLoops = false;
+	
+	/**
+	 * Creates a new TurtleInterpreter object that runs the given program against the given turtle
+	 * @param program The program to run
+	 * @param turtle The turtle that carries out the program's commands
+	 */
+	public TurtleInterpreter(CompiledProgram program, Turtle turtle) {
+		this.code = program.code;
+		this.variableNames = program.variableNames;
+		this.turtle = turtle;
+		this.variables = new int[variableNames.length];
+		this.assigned = new boolean[variableNames.length];
+		this.counters = new int[program.loopDepth];
+		this.memoizable = findMemoizableLoops(code);
+	}
+	
+	/**
+	 * Sets whether loops whose bodies assign no variables are run once and then repeated geometrically,
+	 * instead of being run once per iteration. This is on by default.
+	 * @param memoizeLoops True to repeat loop bodies geometrically, false to run every iteration
+	 */
+	public void setMemoizeLoops(boolean memoizeLoops) {
+		this.memoizeLoops = memoizeLoops;
+	}
+	
+	/**
+	 * Sets whether the repetitions of a memoized loop are generated in parallel on a fork/join pool when
+	 * there are enough of them. The actions produced are exactly the same either way. This is off by default.
+	 * @param parallelLoops True to generate large loops in parallel, false to generate them on this thread
+	 */
+	public void setParallelLoops(boolean parallelLoops) {
+		this.parallelLoops = parallelLoops;
+	}
+	
+	/**
+	 * Runs the whole program.
+	 */
+	public void run() {
+		execute(turtle, 0, code.length);
+	}
+	
+	/**
+	 * Helper method that runs the instructions between two indexes of the program against a turtle.
+	 * @param turtle The turtle that carries out the commands
+	 * @param start The index of the first instruction to run
+	 * @param end The index just past the last instruction to run
+	 */
+	private void execute(Turtle turtle, int start, int end) {
+		int pc = start;
+		while (pc < end) {
+			switch (code[pc]) {
+			case CompiledProgram.FORWARD_NUMBER:
+				turtle.forward(code[pc + 1]);
+				pc += 2;
+				break;
+			case CompiledProgram.FORWARD_VARIABLE:
+				turtle.forward(value(code[pc + 1]));
+				pc += 2;
+				break;
+			case CompiledProgram.TURN_NUMBER:
+				turtle.turn(code[pc + 1]);
+				pc += 2;
+				break;
+			case CompiledProgram.TURN_VARIABLE:
+				turtle.turn(value(code[pc + 1]));
+				pc += 2;
+				break;
+			case CompiledProgram.ASSIGN:
+				variables[code[pc + 1]] = code[pc + 2];
+				assigned[code[pc + 1]] = true;
+				pc += 3;
+				break;
+			case CompiledProgram.LOOP_NUMBER:
+			case CompiledProgram.LOOP_VARIABLE:
+				int count = code[pc] == CompiledProgram.LOOP_NUMBER ? code[pc + 1] : value(code[pc + 1]);
+				if (count <= 0) {
+					pc = code[pc + 2];
+				} else if (count > 1 && memoizeLoops && memoizable[pc] && turtle instanceof DrawableTurtle
+						&& repeatBody((DrawableTurtle) turtle, pc, count)) {
+					pc = code[pc + 2];
+				} else {
+					counters[code[pc + 3]] = count;
+					pc += 4;
+				}
+				break;
+			case CompiledProgram.NEXT:
+				if (--counters[code[pc + 1]] > 0) {
+					pc = code[pc + 2];
+				} else {
+					pc += 3;
+				}
+				break;
+			default:
+				throw new IllegalStateException("Invalid opcode " + code[pc] + " at " + pc);
+			}
+		}
+	}
+	
+	/**
+	 * Helper method that runs a loop body once against a new turtle, and has the given turtle repeat what it drew.
+	 * If the body draws too much to be worth recording, nothing is drawn and the loop must be run directly instead.
+	 * @param turtle The turtle that carries out the loop
+	 * @param pc The index of the loop's LOOP instruction
+	 * @param count The number of times the loop repeats
+	 * @return True if the loop has been carried out, false if it must be run directly
+	 */
+	private boolean repeatBody(DrawableTurtle turtle, int pc, int count) {
+		DrawableTurtle body = new DrawableTurtle();
+		body.currentColor = turtle.currentColor;
+		body.recordingLimit = DrawableTurtle.RECORDING_LIMIT;
+		try {
+			// the body ends just before the loop's NEXT instruction
+			execute(body, pc + 4, code[pc + 2] - CompiledProgram.length(CompiledProgram.NEXT));
+		} catch (DrawableTurtle.RecordingLimitException e) {
+			return false;
+		}
+		turtle.repeat(body, count, parallelLoops);
+		return true;
+	}
+	
+	/**
+	 * Helper method that finds the loops whose bodies do not assign any variables.
+	 * @param code The instructions of the program
+	 * @return An array that is true at the index of each LOOP instruction whose body assigns no variables
+	 */
+	private static boolean[] findMemoizableLoops(int[] code) {
+		boolean[] memoizable = new boolean[code.length];
+		for (int pc = 0; pc < code.length; pc += CompiledProgram.length(code[pc])) {
+			if (code[pc] == CompiledProgram.LOOP_NUMBER || code[pc] == CompiledProgram.LOOP_VARIABLE) {
+				memoizable[pc] = true;
+				for (int i = pc + 4; i < code[pc + 2]; i += CompiledProgram.length(code[i])) {
+					if (code[i] == CompiledProgram.ASSIGN) {
+						memoizable[pc] = false;
+						break;
+					}
+				}
+			}
+		}
+		return memoizable;
+	}
+	
+	/**
+	 * Helper method that returns the value of a variable.
+	 * @param variable The id of the variable
+	 * @return The value of the variable
+	 */
+	private int value(int variable) {
+		if (!assigned[variable]) {
+			throw new IllegalStateException("Variable \"" + variableNames[variable] + "\" is used before it is assigned");
+		}
+		return variables[variable];
+	}
+}
@@ -0,0 +1,248 @@
+/**
+ * This class is used to test the TurtleCompiler and TurtleInterpreter classes. It runs programs against a turtle
+ * that records the commands it is given, and checks that the commands are the ones the program describes.
+ * 
+ * @author Patrick Liem
+ */
+package turtle;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TurtleInterpreterTest {
+	
+	/*
+	 * Turtle that records each command it is given as a string
+	 */
+	private static class RecordingTurtle implements Turtle {
+		List<String> commands = new ArrayList<String>();
+		
+		public void forward(int units) {
+			commands.add("forward " + units);
+		}
+		
+		public void turn(double degrees) {
+			commands.add("turn " + (int) degrees);
+		}
+		
+		public void color(PenColor color) {
+			commands.add("color " + color);
+		}
+		
+		public void draw() {
+		}
+	}
+	
+	private static List<String> run(String file) {
+		RecordingTurtle turtle = new RecordingTurtle();
+		TurtleProgram program = new TurtleParser(file).checkCompactProgram();
+		new TurtleInterpreter(TurtleCompiler.compile(program), turtle).run();
+		return turtle.commands;
+	}
+	
+	@Test
+	public void testVariablesAndLoop() {
+		assertEquals(Arrays.asList("forward 10", "turn 90",
+				"forward 40", "turn 60", "forward 40", "turn 60", "forward 40", "turn 60", "forward 40", "turn 60",
+				"turn 90", "turn 90", "forward 40"), run("testProgramStep3.txt"));
+	}
+	
+	@Test
+	public void testNestedLoops() {
+		assertEquals(Arrays.asList("forward 5", "forward 5", "forward 5", "turn 90",
+				"forward 5", "forward 5", "forward 5", "turn 90", "forward 7"), run("testcases/nestedLoop.txt"));
+	}
+	
+	@Test
+	public void testLoopDepth() {
+		CompiledProgram program = TurtleCompiler.compile(new TurtleParser("testcases/nestedLoop.txt").checkCompactProgram());
+		assertEquals(2, program.loopDepth);
+	}
+	
+	private static DrawableTurtle draw(String file, boolean memoizeLoops) {
+		return draw(file, memoizeLoops, false);
+	}
+	
+	private static DrawableTurtle draw(String file, boolean memoizeLoops, boolean parallelLoops) {
+		return run(file, new DrawableTurtle(), memoizeLoops, parallelLoops);
+	}
+	
+	private static DrawableTurtle run(String file, DrawableTurtle turtle, boolean memoizeLoops, boolean parallelLoops) {
+		TurtleInterpreter interpreter = new TurtleInterpreter(
+				TurtleCompiler.compile(new TurtleParser(file).checkCompactProgram()), turtle);
+		interpreter.setMemoizeLoops(memoizeLoops);
+		interpreter.setParallelLoops(parallelLoops);
+		interpreter.run();
+		return turtle;
+	}
+	
+	private static void assertSameSegment(LineSegment expected, LineSegment actual) {
+		assertSameSegment(expected, actual, 1e-9);
+	}
+	
+	private static void assertSameSegment(LineSegment expected, LineSegment actual, double delta) {
+		assertEquals(expected.start.x, actual.start.x, delta);
+		assertEquals(expected.start.y, actual.start.y, delta);
+		assertEquals(expected.end.x, actual.end.x, delta);
+		assertEquals(expected.end.y, actual.end.y, delta);
+		assertEquals(expected.color, actual.color);
+	}
+	
+	@Test
+	public void testMemoizedLoops() {
+		String[] files = {"starProgram.txt", "testProgramStep2.txt", "testProgramStep3.txt", "testcases/nestedLoop.txt"};
+		for (String file : files) {
+			DrawableTurtle expected = draw(file, false);
+			DrawableTurtle actual = draw(file, true);
+			assertEquals(expected.actionList.size(), actual.actionList.size());
+			for (int i = 0; i < expected.actionList.size(); i++) {
+				assertEquals(expected.actionList.get(i).toString(), actual.actionList.get(i).toString());
+			}
+			assertEquals(expected.lines.size(), actual.lines.size());
+			for (int i = 0; i < expected.lines.size(); i++) {
+				assertSameSegment(expected.lines.get(i), actual.lines.get(i));
+			}
+			assertEquals(expected.currentHeading, actual.currentHeading, 0);
+		}
+	}
+	
+	@Test
+	public void testPeriodicLoop() {
+		DrawableTurtle expected = draw("testcases/periodicLoop.txt", false);
+		DrawableTurtle actual = draw("testcases/periodicLoop.txt", true);
+		
+		// the star closes after 5 repetitions, so only those and the final forward are drawn
+		assertEquals(6, actual.lines.size());
+		for (int i = 0; i < 5; i++) {
+			assertSameSegment(expected.lines.get(i), actual.lines.get(i));
+		}
+		assertSameSegment(expected.lines.get(expected.lines.size() - 1), actual.lines.get(5));
+		assertEquals(expected.currentHeading, actual.currentHeading, 0);
+	}
+	
+	@Test
+	public void testParallelLoopsMatchSerial() {
+		DrawableTurtle serial = draw("testcases/staircaseLoop.txt", true, false);
+		DrawableTurtle parallel = draw("testcases/staircaseLoop.txt", true, true);
+		assertTrue(parallel.actionList.size() >= DrawableTurtle.PARALLEL_THRESHOLD);
+		assertEquals(serial.lines.size(), parallel.lines.size());
+		for (int i = 0; i < serial.lines.size(); i++) {
+			assertSameSegment(serial.lines.get(i), parallel.lines.get(i), 0);
+		}
+		assertEquals(serial.currentX, parallel.currentX, 0);
+		assertEquals(serial.currentY, parallel.currentY, 0);
+		
+		LineSegment last = draw("testcases/staircaseLoop.txt", false).lines.get(serial.lines.size() - 1);
+		assertSameSegment(last, serial.lines.get(serial.lines.size() - 1), 1e-6);
+	}
+	
+	@Test
+	public void testActionViews() {
+		DrawableTurtle turtle = draw("testProgramStep1.txt", false);
+		turtle.color(PenColor.RED);
+		assertEquals(9, turtle.actionList.size());
+		assertEquals("forward 10 steps", turtle.actionList.get(0).toString());
+		assertEquals("turn 90.0 degrees", turtle.actionList.get(1).toString());
+		assertEquals("change to red", turtle.actionList.get(8).toString());
+		assertNull(turtle.actionList.get(1).lineSeg);
+		
+		LineSegment second = turtle.actionList.get(2).lineSeg;
+		assertSameSegment(turtle.lines.get(1), second, 0);
+		assertEquals(10, second.start.y, 1e-9);
+		assertEquals(10, second.end.x, 1e-9);
+	}
+	
+	@Test
+	public void testCompileGrammarNode() {
+		String[] files = {"starProgram.txt", "testProgramStep1.txt", "testProgramStep2.txt", "testProgramStep3.txt",
+				"testcases/nestedLoop.txt"};
+		for (String file : files) {
+			CompiledProgram fromCompact = TurtleCompiler.compile(new TurtleParser(file).checkCompactProgram());
+			CompiledProgram fromGrammar = TurtleCompiler.compile(new TurtleParser(file).checkProgram());
+			assertArrayEquals(fromCompact.code, fromGrammar.code);
+			assertArrayEquals(fromCompact.variableNames, fromGrammar.variableNames);
+		}
+	}
+	
+	@Test
+	public void testRecordingLimit() {
+		// the outer loop's body draws more than a recording turtle may keep, so it is run directly
+		DrawableTurtle memoized = draw("testcases/longLoop.txt", true);
+		DrawableTurtle direct = draw("testcases/longLoop.txt", false);
+		assertTrue(memoized.actionList.size() > DrawableTurtle.RECORDING_LIMIT);
+		assertEquals(direct.actionList.size(), memoized.actionList.size());
+		assertSameSegment(direct.lines.get(direct.lines.size() - 1), memoized.lines.get(memoized.lines.size() - 1), 1e-6);
+		assertEquals(direct.currentHeading, memoized.currentHeading, 0);
+	}
+	
+	@Test
+	public void testStreaming() {
+		DrawableTurtle kept = draw("testcases/staircaseLoop.txt", true);
+		
+		SegmentStatistics statistics = new SegmentStatistics();
+		DrawableTurtle streamed = run("testcases/staircaseLoop.txt", new DrawableTurtle(statistics), true, true);
+		streamed.finish();
+		assertEquals(kept.lines.size(), statistics.getCount());
+		assertEquals(kept.currentX, streamed.currentX, 0);
+		assertEquals(kept.currentY, streamed.currentY, 0);
+		
+		TurtleRenderer expected = new TurtleRenderer(DrawableTurtle.canvasWidth, DrawableTurtle.canvasHeight);
+		expected.drawSegments(kept.segments);
+		TurtleRenderer actual = new TurtleRenderer(DrawableTurtle.canvasWidth, DrawableTurtle.canvasHeight);
+		run("testcases/staircaseLoop.txt", new DrawableTurtle(new AsyncSegmentSink(actual, 2)), true, false).finish();
+		assertArrayEquals(expected.getPixels(), actual.getPixels());
+	}
+	
+	@Test
+	public void testStreamingFailure() {
+		final boolean[] closed = {false};
+		SegmentSink failing = new SegmentSink() {
+			@Override
+			public void accept(SegmentStore batch) {
+				throw new OutOfMemoryError("test");
+			}
+			
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		DrawableTurtle turtle = new DrawableTurtle(new AsyncSegmentSink(failing, 2));
+		try {
+			try {
+				run("testcases/staircaseLoop.txt", turtle, true, false);
+			} finally {
+				turtle.finish();
+			}
+			fail("the error thrown by the sink was not passed on");
+		} catch (OutOfMemoryError e) {
+			assertEquals("test", e.getMessage());
+		}
+		assertTrue(closed[0]);
+	}
+	
+	@Test
+	public void testDirectionTable() {
+		// whole and fractional headings, reached both by one turn and by many
+		double[] turns = {1, 7, 45, 90, 137, 0.5, 22.5, 1.0 / 3, 359.75};
+		for (double degrees : turns) {
+			DrawableTurtle turtle = new DrawableTurtle();
+			double x = 0;
+			double y = 0;
+			for (int i = 0; i < 1000; i++) {
+				double heading = turtle.currentHeading;
+				x += Math.cos(Math.toRadians(90.0 - heading)) * (double) (i % 13);
+				y += Math.sin(Math.toRadians(90.0 - heading)) * (double) (i % 13);
+				turtle.forward(i % 13);
+				assertEquals(x, turtle.currentX, 0);
+				assertEquals(y, turtle.currentY, 0);
+				turtle.turn(degrees);
+			}
+		}
+	}
+}
@@ -15,6 +15,8 @@ import java.util.Scanner;
 public class TurtleLexer {
 	
 	private Scanner codeScanner;
+	private TokenType currentType;
+	private String currentText;
 	
 	/**
 	 * Creates a new TurtleLexer object that reads the contents of the given file
@@ -29,37 +31,77 @@ public class TurtleLexer {
 		}
 	}
 	
+	/**
+	 * Constructor for subclasses that read the program without a Scanner.
+	 */
+	protected TurtleLexer() {
+	}
+	
 	/**
 	 * Reads the next word of the Turtle Graphics program, converts it into a token, and returns it.
 	 * @return A GrammarNode that represents the next token in the program
 	 */
 	public GrammarNode next() {
-		String currentWord = codeScanner.next();
-		switch(currentWord) {
+		TokenType type = nextToken();
+		return new GrammarNode(type.category, tokenText());
+	}
+	
+	/**
+	 * Reads the next word of the Turtle Graphics program and classifies it, without building a GrammarNode.
+	 * The text of the word can then be read with tokenText().
+	 * @return The kind of token that was read
+	 */
+	public TokenType nextToken() {
+		currentText = codeScanner.next();
+		switch(currentText) {
 		case "programEnd":
-			return new GrammarNode("TERMINAL", "programEnd");
+			currentType = TokenType.PROGRAM_END;
+			break;
 		case "begin":
-			return new GrammarNode("TERMINAL", "begin");
+			currentType = TokenType.BEGIN;
+			break;
 		case "end":
-			return new GrammarNode("TERMINAL", "end");
+			currentType = TokenType.END;
+			break;
 		case "loop":
-			return new GrammarNode("TERMINAL", "loop");
+			currentType = TokenType.LOOP;
+			break;
 		case "forward":
-			return new GrammarNode("COMMAND", "forward");
+			currentType = TokenType.FORWARD;
+			break;
 		case "turn":
-			return new GrammarNode("COMMAND", "turn");
+			currentType = TokenType.TURN;
+			break;
 		case "=":
-			return new GrammarNode("TERMINAL", "=");
+			currentType = TokenType.EQUALS;
+			break;
 		default:
-			if (currentWord.matches("[0-9]+")) {
-				return new GrammarNode("NUMBER", currentWord);
-			} else if (currentWord.matches("[a-zA-Z]+[a-zA-Z0-9]*")) {
-				return new GrammarNode("VARIABLE", currentWord);
+			if (currentText.matches("[0-9]+")) {
+				currentType = TokenType.NUMBER;
+			} else if (currentText.matches("[a-zA-Z]+[a-zA-Z0-9]*")) {
+				currentType = TokenType.VARIABLE;
 			} else {
-				return new GrammarNode("INVALID_VARIABLE", currentWord);
+				currentType = TokenType.INVALID_VARIABLE;
 			}
-			
 		}
+		return currentType;
+	}
+	
+	/**
+	 * Returns the text of the token last read by nextToken().
+	 * @return The word that makes up the current token
+	 */
+	public String tokenText() {
+		return currentText;
+	}
+	
+	/**
+	 * Returns the value of the token last read by nextToken(), which must be a NUMBER token.
+	 * @return The integer value of the current token
+	 * @throws NumberFormatException if the number does not fit in an int
+	 */
+	public int tokenNumber() {
+		return Integer.parseInt(currentText);
 	}
 	
 	/**
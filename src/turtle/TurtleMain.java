@@ -1,8 +1,7 @@
 /**
- * This class runs a program written in the Turtle Graphics language. It uses the TurtleParser class
- * to ensure that the code is valid, and to get the commands it has to run. It then converts the commands
- * to Java code and executes them. The TurtleMain class will not create the TurtleGUI if the program 
- * is not written with valid syntax.
+ * This class runs a program written in the Turtle Graphics language. It uses a TurtleEngine to ensure
+ * that the code is valid, to compile the commands it has to run, and to run them. The TurtleMain class
+ * will not create the TurtleGUI if the program is not written with valid syntax.
  * 
  * @author Patrick Liem
  * 
@@ -10,131 +9,279 @@
 
 package turtle;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
 
 public class TurtleMain {
-
-	private static ArrayList<String> commands;
-	private static DrawableTurtle turtle;
-	
-	private static HashMap<String, Integer> variables = new HashMap<String, Integer>();
 	
 	/**
 	 * Main method.
-	 * The program should be run with 1 parameter, which is the program to be read.
+	 * The program should be run with the program to be read as its first parameter, optionally followed by:
+	 *   --parallel   generate the repetitions of large loops, and draw large PNG images, on all processors
+	 *   --png file   draw the image into a PNG file instead of showing it in a window
+	 *   --svg file   draw the image into an SVG file instead of showing it in a window
+	 *   --ps file    draw the image into a PostScript (EPS) file instead of showing it in a window
+	 *   --simplify   with --png, --svg or --ps, merge collinear and retraced segments before drawing them
+	 *   --optimize   optimize the program before running it, and print how many instructions were eliminated
+	 *   --check      only check the program, printing every syntax error with its line and column
+	 *   --cache dir  keep the compiled program in the given directory, and reuse it while the program is unchanged
+	 *   --stream     pass the segments on as they are drawn instead of keeping them: with --png, --svg or --ps,
+	 *                draw them into the file on a separate thread, otherwise print statistics about the drawing
+	 *   --save file  also save the segments of the drawing in a segment file
+	 *   --compact    with --save, save the segments in about half the space, to within float precision
+	 *   --replay     the first parameter is a drawing saved with --save instead of a program, which is shown or
+	 *                drawn into a file without being run again
+	 * Only one of --png, --svg and --ps can be given.
 	 */
 	public static void main(String args[]) {
 
-		TurtleParser parser = new TurtleParser(args[0]);
-
-		GrammarNode root = parser.checkProgram();
-		
-		
-		// If program is valid
-		if (root != null) {
-			
-			turtle = new DrawableTurtle();
-			
-			commands = root.leafPreorderTraversal();
-			
-			doCommands(commands);
-			
-			turtle.draw();
-		}
-
-	}
-	
-	/**
-	 * Converts the turtle code into real Java code and executes it.
-	 * Precondition: The turtle code must not contain syntax errors.
-	 * @param commands The turtle code commands to execute
-	 */
-	private static void doCommands(ArrayList<String> commands) {
-		while (!commands.isEmpty()) {
-			String currentCommand = commands.get(0);
-			commands.remove(0);
-			
-			switch(currentCommand) {
-			case "begin":
+		boolean parallel = false;
+		boolean stream = false;
+		boolean check = false;
+		boolean optimize = false;
+		boolean simplify = false;
+		String cacheDirectory = null;
+		String pngFile = null;
+		String vectorFile = null;
+		String saveFile = null;
+		boolean compact = false;
+		boolean replay = false;
+		VectorExporter.Format vectorFormat = null;
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+			case "--parallel":
+				parallel = true;
 				break;
-			case "forward":
-				int distance;
-				try {
-					distance = Integer.parseInt(commands.get(0));
-				} catch (NumberFormatException e) {
-					distance = variables.get(commands.get(0));
-				}
-				commands.remove(0);
-				turtle.forward(distance);
+			case "--optimize":
+				optimize = true;
+				break;
+			case "--simplify":
+				simplify = true;
+				break;
+			case "--check":
+				check = true;
+				break;
+			case "--stream":
+				stream = true;
 				break;
-			case "turn":
-				int angle;
-				try {
-					angle = Integer.parseInt(commands.get(0));
-				} catch (NumberFormatException e) {
-					angle = variables.get(commands.get(0));
+			case "--compact":
+				compact = true;
+				break;
+			case "--replay":
+				replay = true;
+				break;
+			case "--save":
+				if (++i == args.length) {
+					System.out.println("Missing file name after --save");
+					return;
 				}
-				commands.remove(0);
-				turtle.turn(angle);
+				saveFile = args[i];
 				break;
-			case "loop":
-				int max;
-				try {
-					max = Integer.parseInt(commands.get(0));
-				} catch (NumberFormatException e) {
-					max = variables.get(commands.get(0));
+			case "--cache":
+				if (++i == args.length) {
+					System.out.println("Missing directory name after --cache");
+					return;
 				}
-				commands.remove(0);
-				ArrayList<String> chunk = getBlock();
-				for (int i = 0; i < max; i++) {
-					doCommands(copy(chunk));
+				cacheDirectory = args[i];
+				break;
+			case "--png":
+				if (++i == args.length) {
+					System.out.println("Missing file name after --png");
+					return;
 				}
-			case "end":
+				pngFile = args[i];
 				break;
-			case "programEnd":
+			case "--svg":
+			case "--ps":
+				if (i + 1 == args.length) {
+					System.out.println("Missing file name after " + args[i]);
+					return;
+				}
+				vectorFormat = args[i].equals("--svg") ? VectorExporter.Format.SVG : VectorExporter.Format.POSTSCRIPT;
+				vectorFile = args[++i];
 				break;
 			default:
-				String variable = currentCommand;
-				//remove equals sign
-				commands.remove(0);
-				int value = Integer.parseInt(commands.get(0));
-				commands.remove(0);
-				variables.put(variable, value);
-				
+				System.out.println("Unknown option \"" + args[i] + "\"");
+				return;
+			}
+		}
+
+		if (pngFile != null && vectorFile != null) {
+			System.out.println("Only one of --png, --svg and --ps can be given");
+			return;
+		}
+
+		if (saveFile != null && (stream || replay)) {
+			System.out.println("--save cannot be used with --stream or --replay");
+			return;
+		}
+
+		if (replay) {
+			replay(args[0], stream, parallel, simplify, pngFile, vectorFile, vectorFormat);
+			return;
+		}
+
+		TurtleEngine engine = new TurtleEngine();
+		engine.setParallelLoops(parallel);
+		engine.setOptimize(optimize);
+		CompileCache cache = null;
+		if (cacheDirectory != null) {
+			cache = new CompileCache(1, cacheDirectory);
+			engine.setCache(cache);
+		}
+
+		if (check) {
+			try {
+				for (Diagnostic diagnostic : engine.validate(args[0])) {
+					System.out.println(args[0] + ":" + diagnostic);
+				}
+			} catch (UncheckedIOException e) {
+				System.out.println("Error reading file");
+				e.getCause().printStackTrace();
 			}
+			return;
 		}
+
+		CompiledProgram program;
+		try {
+			program = engine.compile(args[0]);
+		} catch (IllegalArgumentException e) {
+			// the program is not valid
+			System.out.println(e.getMessage());
+			return;
+		} catch (UncheckedIOException e) {
+			System.out.println("Error reading file");
+			e.getCause().printStackTrace();
+			return;
+		}
+		if (cache != null && cache.getSaveFailures() > 0) {
+			System.out.println("Error writing file in " + cacheDirectory);
+		}
+		if (program.report != null) {
+			System.out.println(program.report);
+		}
+		
+		if (stream) {
+			try {
+				stream(sink -> {
+					DrawableTurtle turtle = new DrawableTurtle(sink);
+					try {
+						engine.execute(program, turtle);
+					} finally {
+						// closes the sink, so that its thread stops and its file is closed
+						turtle.finish();
+					}
+				}, pngFile, vectorFile, vectorFormat);
+			} catch (IllegalStateException e) {
+				// the program could not be run, for example because it uses a variable before assigning it
+				System.out.println(e.getMessage());
+			}
+			return;
+		}
+		
+		DrawableTurtle turtle = new DrawableTurtle();
+		try {
+			engine.execute(program, turtle);
+		} catch (IllegalStateException e) {
+			// the program could not be run, for example because it uses a variable before assigning it
+			System.out.println(e.getMessage());
+			return;
+		}
+		
+		if (saveFile != null) {
+			try {
+				turtle.saveDrawing(saveFile, compact);
+			} catch (IOException e) {
+				System.out.println("Error writing file");
+				e.printStackTrace();
+			}
+		}
+		show(turtle, parallel, simplify, pngFile, vectorFile, vectorFormat);
 	}
 	
 	/**
-	 * Helper method that gets a block of code and puts it into an ArrayList.
-	 * @return An ArrayList containing the block of code
+	 * Helper method that shows a saved drawing, or draws it into a file, without running the program that drew it.
+	 * With --stream the segments are passed straight from the mapped file to the file being drawn.
+	 * @param file The segment file the drawing was saved in
 	 */
-	private static ArrayList<String> getBlock() {
-		ArrayList<String> chunk = new ArrayList<String>();
-		
-		while (!commands.get(0).equals("end")) {
-			chunk.add(commands.get(0));
-			commands.remove(0);
+	private static void replay(String file, boolean stream, boolean parallel, boolean simplify, String pngFile,
+			String vectorFile, VectorExporter.Format vectorFormat) {
+		SegmentFile drawing;
+		try {
+			drawing = new SegmentFile(file);
+		} catch (IOException e) {
+			System.out.println("Error reading file");
+			e.printStackTrace();
+			return;
 		}
-		
-		return chunk;
+		if (stream) {
+			stream(drawing::replay, pngFile, vectorFile, vectorFormat);
+			return;
+		}
+		show(DrawableTurtle.replay(drawing), parallel, simplify, pngFile, vectorFile, vectorFormat);
 	}
 	
+	/**
+	 * Helper method that shows the drawing of a turtle in a window, or draws it into a PNG or vector file.
+	 */
+	private static void show(DrawableTurtle turtle, boolean parallel, boolean simplify, String pngFile,
+			String vectorFile, VectorExporter.Format vectorFormat) {
+		if (pngFile == null && vectorFile == null) {
+			turtle.draw();
+		} else {
+			try {
+				if (pngFile != null) {
+					turtle.drawToFile(pngFile, parallel, simplify);
+				} else {
+					turtle.drawToVectorFile(vectorFile, vectorFormat, simplify);
+				}
+			} catch (IOException e) {
+				System.out.println("Error writing file");
+				e.printStackTrace();
+			}
+		}
+
+	}
 	
 	/**
-	 * Helper method that creates a deep copy of an ArrayList<String>
-	 * 
-	 * @param original Array to be copied
-	 * @return The copy of the original array
+	 * Helper method that streams a drawing into a PNG file, into a vector file, or into statistics that are
+	 * printed once the drawing is finished.
+	 * @param drawing Passes every segment of the drawing to the sink it is given, and then closes the sink
+	 * @param pngFile The PNG file to draw the image into, or null
+	 * @param vectorFile The vector file to draw the image into, or null
+	 * @param vectorFormat The kind of vector file to write
 	 */
-	private static ArrayList<String> copy(ArrayList<String> original) {
-		ArrayList<String> copy = new ArrayList<String>();
-		for (String s: original) {
-			copy.add(s);
+	private static void stream(Consumer<SegmentSink> drawing, String pngFile, String vectorFile,
+			VectorExporter.Format vectorFormat) {
+		TurtleRenderer renderer = null;
+		SegmentStatistics statistics = null;
+		SegmentSink sink;
+		try {
+			if (pngFile != null) {
+				renderer = new TurtleRenderer(DrawableTurtle.canvasWidth, DrawableTurtle.canvasHeight);
+				sink = new AsyncSegmentSink(renderer, 4);
+			} else if (vectorFile != null) {
+				sink = new AsyncSegmentSink(new VectorExporter(vectorFile, vectorFormat, DrawableTurtle.canvasWidth,
+						DrawableTurtle.canvasHeight), 4);
+			} else {
+				statistics = new SegmentStatistics();
+				sink = statistics;
+			}
+			
+			drawing.accept(sink);
+			
+			if (renderer != null) {
+				renderer.writePng(pngFile);
+			} else if (statistics != null) {
+				System.out.println(statistics);
+			}
+		} catch (IOException e) {
+			System.out.println("Error writing file");
+			e.printStackTrace();
+		} catch (UncheckedIOException e) {
+			System.out.println("Error writing file");
+			e.getCause().printStackTrace();
 		}
-		return copy;
 	}
 }
-	
-
@@ -0,0 +1,326 @@
+/**
+ * This class optimizes a Turtle Graphics program in its compact form, between parsing and compiling. It replaces
+ * variables by their values wherever a variable is known to hold one value, removes assignments to variables that
+ * are then no longer read, and then simplifies each block: adjacent turns are folded into one, turns of a multiple
+ * of 360 degrees are removed, adjacent forwards are merged into one, loops that never run or have an empty body are
+ * removed, and loops that run once are replaced by their body.
+ *
+ * The optimized program leaves the turtle in the same place, facing the same way, having drawn the same lines,
+ * and it fails in the same way if it reads a variable before assigning it. It may draw a straight line in fewer
+ * segments than the original program, and carries out fewer turtle commands.
+ *
+ * Every assignment in the language assigns a number, so the values a variable can hold inside a loop are the one
+ * it holds before the loop and the ones the loop assigns to it, and the optimizer finds them in one pass over
+ * the program.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TurtleOptimizer {
+
+	/**
+	 * How many instructions an optimization removed, and how.
+	 */
+	public static class Report {
+		/** The number of instructions in the compiled original program */
+		public final int instructionsBefore;
+		/** The number of instructions in the compiled optimized program */
+		public final int instructionsAfter;
+		/** The number of variable operands replaced by their value */
+		public final int constantsPropagated;
+		/** The number of assignments removed because their variable is no longer read */
+		public final int assignmentsRemoved;
+		/** The number of turns folded into the turn before them */
+		public final int turnsFolded;
+		/** The number of turns removed because they turn a multiple of 360 degrees */
+		public final int noOpTurnsRemoved;
+		/** The number of forwards merged into the forward before them */
+		public final int forwardsMerged;
+		/** The number of loops removed because they never run, have an empty body, or run once */
+		public final int loopsRemoved;
+
+		Report(int instructionsBefore, int instructionsAfter, int constantsPropagated, int assignmentsRemoved,
+				int turnsFolded, int noOpTurnsRemoved, int forwardsMerged, int loopsRemoved) {
+			this.instructionsBefore = instructionsBefore;
+			this.instructionsAfter = instructionsAfter;
+			this.constantsPropagated = constantsPropagated;
+			this.assignmentsRemoved = assignmentsRemoved;
+			this.turnsFolded = turnsFolded;
+			this.noOpTurnsRemoved = noOpTurnsRemoved;
+			this.forwardsMerged = forwardsMerged;
+			this.loopsRemoved = loopsRemoved;
+		}
+
+		/**
+		 * @return The number of instructions the optimization removed
+		 */
+		public int getEliminated() {
+			return instructionsBefore - instructionsAfter;
+		}
+
+		@Override
+		public String toString() {
+			return "Eliminated " + getEliminated() + " of " + instructionsBefore + " instructions: "
+					+ constantsPropagated + " constants propagated, " + assignmentsRemoved + " assignments removed, "
+					+ turnsFolded + " turns folded, " + noOpTurnsRemoved + " no-op turns removed, "
+					+ forwardsMerged + " forwards merged, " + loopsRemoved + " loops removed";
+		}
+	}
+
+	// what is known about a variable at a point of the program
+	private static final byte NEVER_ASSIGNED = 0;
+	private static final byte CONSTANT = 1;
+	private static final byte VARIES = 2;
+	private static final byte MAYBE_ASSIGNED = 3;
+
+	private int constantsPropagated;
+	private int assignmentsRemoved;
+	private int turnsFolded;
+	private int noOpTurnsRemoved;
+	private int forwardsMerged;
+	private int loopsRemoved;
+	private Report report;
+
+	/**
+	 * Optimizes a program. The program itself is not changed.
+	 * @param program The program to optimize
+	 * @return The optimized program, which shares the original program's SymbolTable
+	 */
+	public TurtleProgram optimize(TurtleProgram program) {
+		constantsPropagated = 0;
+		assignmentsRemoved = 0;
+		turnsFolded = 0;
+		noOpTurnsRemoved = 0;
+		forwardsMerged = 0;
+		loopsRemoved = 0;
+
+		int variables = program.symbols.size();
+		AstNode[] statements = propagate(program.root.children, new byte[variables], new int[variables]);
+		boolean[] read = new boolean[variables];
+		findReads(statements, read);
+		statements = simplify(statements, read);
+
+		report = new Report(countInstructions(program.root.children), countInstructions(statements),
+				constantsPropagated, assignmentsRemoved, turnsFolded, noOpTurnsRemoved, forwardsMerged, loopsRemoved);
+		return new TurtleProgram(new AstNode(NodeKind.PROGRAM, AstNode.NO_VARIABLE, 0, statements), program.symbols);
+	}
+
+	/**
+	 * @return The report of the last program optimized, or null if no program has been optimized
+	 */
+	public Report getReport() {
+		return report;
+	}
+
+	/**
+	 * Helper method that replaces the variables of a list of statements by their values where they are known,
+	 * and removes the loops that are known never to run.
+	 * @param statements The statements to optimize
+	 * @param kinds What is known about each variable before the statements, updated to what is known after them
+	 * @param values The value of each variable that is known to be constant, updated in the same way
+	 * @return The optimized statements
+	 */
+	private AstNode[] propagate(AstNode[] statements, byte[] kinds, int[] values) {
+		List<AstNode> optimized = new ArrayList<AstNode>(statements.length);
+		for (AstNode statement : statements) {
+			switch (statement.kind) {
+			case ASSIGNMENT:
+				kinds[statement.variable] = CONSTANT;
+				values[statement.variable] = statement.number;
+				optimized.add(statement);
+				break;
+			case FORWARD:
+			case TURN:
+				optimized.add(resolve(statement, kinds, values));
+				break;
+			case LOOP:
+				boolean known = !statement.hasVariable() || kinds[statement.variable] == CONSTANT;
+				int count = statement.hasVariable() ? values[statement.variable] : statement.number;
+				if (known && count <= 0) {
+					loopsRemoved++;
+					break;
+				}
+
+				// the body starts with the values before the loop or with the values it assigns itself
+				byte[] bodyKinds = kinds.clone();
+				int[] bodyValues = values.clone();
+				widen(statement.children, bodyKinds, bodyValues);
+				byte[] entryKinds = bodyKinds.clone();
+				int[] entryValues = bodyValues.clone();
+				AstNode[] body = propagate(statement.children, bodyKinds, bodyValues);
+
+				if (known) {
+					// the body runs at least once, and the last time it runs it starts with no more than the entry values
+					System.arraycopy(bodyKinds, 0, kinds, 0, kinds.length);
+					System.arraycopy(bodyValues, 0, values, 0, values.length);
+				} else {
+					// the body may not run at all
+					for (int i = 0; i < kinds.length; i++) {
+						kinds[i] = entryKinds[i];
+						values[i] = entryValues[i];
+						meet(kinds, values, i, bodyKinds[i], bodyValues[i]);
+					}
+				}
+				if (known && statement.hasVariable()) {
+					constantsPropagated++;
+					optimized.add(new AstNode(NodeKind.LOOP, AstNode.NO_VARIABLE, count, body));
+				} else {
+					optimized.add(new AstNode(NodeKind.LOOP, statement.variable, statement.number, body));
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unexpected " + statement.kind + " node");
+			}
+		}
+		return optimized.toArray(new AstNode[optimized.size()]);
+	}
+
+	/**
+	 * Helper method that replaces the variable operand of a command by its value, if it is known.
+	 * @param command The forward or turn command
+	 * @param kinds What is known about each variable before the command
+	 * @param values The value of each variable that is known to be constant
+	 * @return The command with a number operand, or the command itself
+	 */
+	private AstNode resolve(AstNode command, byte[] kinds, int[] values) {
+		if (!command.hasVariable() || kinds[command.variable] != CONSTANT) {
+			return command;
+		}
+		constantsPropagated++;
+		return new AstNode(command.kind, AstNode.NO_VARIABLE, values[command.variable], AstNode.NO_CHILDREN);
+	}
+
+	/**
+	 * Helper method that adds the values assigned by a list of statements, including those in nested loops, to
+	 * what is known about the variables they assign.
+	 */
+	private static void widen(AstNode[] statements, byte[] kinds, int[] values) {
+		for (AstNode statement : statements) {
+			if (statement.kind == NodeKind.ASSIGNMENT) {
+				meet(kinds, values, statement.variable, CONSTANT, statement.number);
+			} else if (statement.kind == NodeKind.LOOP) {
+				widen(statement.children, kinds, values);
+			}
+		}
+	}
+
+	/**
+	 * Helper method that combines what is known about a variable on one path through the program with what is
+	 * known about it on another path.
+	 * @param kinds What is known about each variable on the first path, updated to what is known on either path
+	 * @param values The value of each variable that is known to be constant on the first path
+	 * @param variable The variable to combine
+	 * @param kind What is known about the variable on the second path
+	 * @param value Its value on the second path, if it is constant there
+	 */
+	private static void meet(byte[] kinds, int[] values, int variable, byte kind, int value) {
+		byte current = kinds[variable];
+		if (current == kind && (kind != CONSTANT || values[variable] == value)) {
+			return;
+		}
+		if (current == NEVER_ASSIGNED || kind == NEVER_ASSIGNED || current == MAYBE_ASSIGNED || kind == MAYBE_ASSIGNED) {
+			kinds[variable] = MAYBE_ASSIGNED;
+		} else {
+			kinds[variable] = VARIES;
+		}
+	}
+
+	/**
+	 * Helper method that marks every variable that a list of statements reads.
+	 */
+	private static void findReads(AstNode[] statements, boolean[] read) {
+		for (AstNode statement : statements) {
+			if (statement.kind != NodeKind.ASSIGNMENT && statement.hasVariable()) {
+				read[statement.variable] = true;
+			}
+			findReads(statement.children, read);
+		}
+	}
+
+	/**
+	 * Helper method that removes the assignments to variables that are never read from a list of statements,
+	 * and simplifies its commands and loops.
+	 * @param statements The statements to simplify
+	 * @param read Which variables are read anywhere in the program
+	 * @return The simplified statements
+	 */
+	private AstNode[] simplify(AstNode[] statements, boolean[] read) {
+		List<AstNode> simplified = new ArrayList<AstNode>(statements.length);
+		for (AstNode statement : statements) {
+			if (statement.kind == NodeKind.ASSIGNMENT && !read[statement.variable]) {
+				assignmentsRemoved++;
+			} else if (statement.kind == NodeKind.LOOP) {
+				AstNode[] body = simplify(statement.children, read);
+				if (statement.hasVariable()) {
+					// the count must still be read, in case its variable has not been assigned
+					append(simplified, new AstNode(NodeKind.LOOP, statement.variable, statement.number, body));
+				} else if (body.length == 0) {
+					loopsRemoved++;
+				} else if (statement.number == 1) {
+					loopsRemoved++;
+					for (AstNode inner : body) {
+						append(simplified, inner);
+					}
+				} else {
+					append(simplified, new AstNode(NodeKind.LOOP, AstNode.NO_VARIABLE, statement.number, body));
+				}
+			} else {
+				append(simplified, statement);
+			}
+		}
+		return simplified.toArray(new AstNode[simplified.size()]);
+	}
+
+	/**
+	 * Helper method that adds a statement to the end of a block, folding it into the statement before it if both
+	 * are turns or both are forwards by a number, and leaving out turns by a multiple of 360 degrees.
+	 * @param block The statements of the block so far
+	 * @param statement The statement to add
+	 */
+	private void append(List<AstNode> block, AstNode statement) {
+		AstNode last = block.isEmpty() ? null : block.get(block.size() - 1);
+		if (statement.kind == NodeKind.TURN && !statement.hasVariable()) {
+			if (last != null && last.kind == NodeKind.TURN && !last.hasVariable()) {
+				// both numbers are at least 0, and turns are taken modulo 360
+				int degrees = (int) (((long) last.number + statement.number) % 360);
+				turnsFolded++;
+				block.remove(block.size() - 1);
+				if (degrees == 0) {
+					noOpTurnsRemoved++;
+				} else {
+					block.add(new AstNode(NodeKind.TURN, AstNode.NO_VARIABLE, degrees, AstNode.NO_CHILDREN));
+				}
+			} else if (statement.number % 360 == 0) {
+				noOpTurnsRemoved++;
+			} else {
+				block.add(statement);
+			}
+		} else if (statement.kind == NodeKind.FORWARD && !statement.hasVariable() && last != null
+				&& last.kind == NodeKind.FORWARD && !last.hasVariable()
+				&& (long) last.number + statement.number <= Integer.MAX_VALUE) {
+			forwardsMerged++;
+			block.set(block.size() - 1, new AstNode(NodeKind.FORWARD, AstNode.NO_VARIABLE,
+					last.number + statement.number, AstNode.NO_CHILDREN));
+		} else {
+			block.add(statement);
+		}
+	}
+
+	/**
+	 * Helper method that counts the instructions a list of statements compiles to: one for each command, and
+	 * two for each loop, besides those of its body.
+	 */
+	private static int countInstructions(AstNode[] statements) {
+		int instructions = 0;
+		for (AstNode statement : statements) {
+			instructions += statement.kind == NodeKind.LOOP ? 2 + countInstructions(statement.children) : 1;
+		}
+		return instructions;
+	}
+}
@@ -9,20 +9,39 @@
 
 package turtle;
 
+import java.util.Arrays;
 
 public class TurtleParser {
 
 	private boolean error = false;
+	private String errorMessage = null;
+	private boolean printErrors = true;
 
 	private TurtleLexer codeScanner;
-	private GrammarNode currentWord;
+	private TokenType currentToken;
+
+	// state used when building the compact Abstract Syntax Tree
+	private SymbolTable symbols;
+	private AstNode[] statements = new AstNode[16];
+	private int statementCount;
+	private int operandVariable;
+	private int operandNumber;
 
 	/**
 	 * The constructor creates a new TurtleParser object for a given file that contains a turtle program
 	 * @param file The file that contains the turtle program
+	 * @throws java.io.UncheckedIOException if the file cannot be read
 	 */
 	public TurtleParser(String file) {
-			codeScanner = new TurtleLexer(file);
+			codeScanner = new MappedTurtleLexer(file);
+	}
+
+	/**
+	 * Creates a new TurtleParser object that reads its tokens from the given lexer
+	 * @param lexer The lexer that tokenizes the turtle program
+	 */
+	public TurtleParser(TurtleLexer lexer) {
+			codeScanner = lexer;
 	}
 
 	/**
@@ -42,19 +61,15 @@ public class TurtleParser {
 		root.children.add(blockNode);
 
 		if (codeScanner.hasNext()) {
-			currentWord = codeScanner.next();
+			currentToken = codeScanner.nextToken();
 			
-			if (!currentWord.data.equals("programEnd")) {
-				if (!error) {
-					error = true;
-					System.out.println("Syntax Error: Missing programEnd statement.");
-				}
+			if (currentToken != TokenType.PROGRAM_END) {
+				syntaxError("Syntax Error: Missing programEnd statement.");
 				return null;
 			}
 			
 		} else {
-			error = true;
-			System.out.println("Syntax Error: Missing programEnd statement.");
+			syntaxError("Syntax Error: Missing programEnd statement.");
 			return null;
 		}
 
@@ -71,12 +86,9 @@ public class TurtleParser {
 
 		GrammarNode blockNode = new GrammarNode("block", null);
 
-		currentWord = codeScanner.next();
-		if (!currentWord.data.equals("begin")) {
-			if (!error) {
-				error = true;
-				System.out.println("Syntax Error: Missing begin statement for program block.");
-			}
+		currentToken = codeScanner.nextToken();
+		if (currentToken != TokenType.BEGIN) {
+			syntaxError("Syntax Error: Missing begin statement for program block.");
 			return null;
 		}
 
@@ -90,11 +102,8 @@ public class TurtleParser {
 
 		blockNode.children.add(statementListNode);
 
-		if (!currentWord.data.equals("end")) {
-			if (!error) {
-				error = true;
-				System.out.println("Syntax Error: Missing end statement for program block.");
-			}
+		if (currentToken != TokenType.END) {
+			syntaxError("Syntax Error: Missing end statement for program block.");
 			return null;
 		}
 
@@ -132,7 +141,7 @@ public class TurtleParser {
 		GrammarNode statementNode = new GrammarNode("statement", null);
 		
 		if (codeScanner.hasNext())
-			currentWord = codeScanner.next();
+			currentToken = codeScanner.nextToken();
 		else
 			return null;
 
@@ -153,6 +162,15 @@ public class TurtleParser {
 		return statementNode;
 	}
 
+	/**
+	 * Checks the single statement that starts at the lexer's next token, in the same way as checkProgram() checks
+	 * each statement of a block.
+	 * @return A node that represents the statement, or null if the next tokens are not a statement
+	 */
+	GrammarNode checkNextStatement() {
+		return checkStatement();
+	}
+
 	/**
 	 * Helper method that returns a node that represents a loop nonterminal.
 	 * @return A node that represents a loop nonterminal
@@ -160,7 +178,7 @@ public class TurtleParser {
 	private GrammarNode checkLoop() {
 		GrammarNode loopNode = new GrammarNode("loop", null);
 
-		if (!currentWord.data.equals("loop")) {
+		if (currentToken != TokenType.LOOP) {
 			return null;
 		}
 
@@ -191,12 +209,12 @@ public class TurtleParser {
 		GrammarNode commandNode = new GrammarNode("command", null);
 
 
-		if (currentWord.data.equals("end")) {
+		if (currentToken == TokenType.END) {
 			return null;
 		}
 
-		if (!currentWord.data.equals("forward")) {
-			if (!currentWord.data.equals("turn")) {
+		if (currentToken != TokenType.FORWARD) {
+			if (currentToken != TokenType.TURN) {
 				GrammarNode assignment = checkAssignment();
 
 				if (assignment == null) {
@@ -249,20 +267,14 @@ public class TurtleParser {
 		assignmentNode.children.add(variableNode);
 
 		if (codeScanner.hasNext()) {
-			currentWord = codeScanner.next();
+			currentToken = codeScanner.nextToken();
 		} else {
-			if (!error) {
-				error = true;
-				System.out.println("Syntax Error: Missing end statement for program block.");
-			}
+			syntaxError("Syntax Error: Missing end statement for program block.");
 			return null;
 		}
 			
-		if (!currentWord.data.equals("=")) {
-			if (!error) {
-				error = true;
-				System.out.println("Syntax Error: Expected \"=\", but found \"" + currentWord.data + "\"");
-			}
+		if (currentToken != TokenType.EQUALS) {
+			syntaxError("Syntax Error: Expected \"=\", but found \"" + codeScanner.tokenText() + "\"");
 			return null;
 		}
 
@@ -284,13 +296,10 @@ public class TurtleParser {
 	 * @return A node that represents a variable nonterminal
 	 */
 	private GrammarNode checkVariable() {
-		if (currentWord.data.matches("[a-zA-Z]+[a-zA-Z0-9]*")) {
-			return new GrammarNode("string", currentWord.data);
-		}
-		if (!error) {
-			error = true;
-			System.out.println("Syntax Error: Invalid variable name \"" + currentWord.data + "\"");
+		if (currentToken.isWord()) {
+			return new GrammarNode("string", codeScanner.tokenText());
 		}
+		syntaxError("Syntax Error: Invalid variable name \"" + codeScanner.tokenText() + "\"");
 		return null;
 	}
 
@@ -349,19 +358,287 @@ public class TurtleParser {
 	private GrammarNode checkNumber() {
 		
 		if (codeScanner.hasNext())
-			currentWord = codeScanner.next();
+			currentToken = codeScanner.nextToken();
 		else
 			return null;
 
-		if (!currentWord.data.matches("[0-9]+")) {
-			if (!currentWord.data.matches("[a-zA-Z]+[a-zA-Z0-9]*")) {
-				if (!error) {
-					error = true;
-					System.out.println("Syntax Error: Invalid number \"" + currentWord.data + "\"");
-				}
+		if (currentToken != TokenType.NUMBER) {
+			if (!currentToken.isWord()) {
+				syntaxError("Syntax Error: Invalid number \"" + codeScanner.tokenText() + "\"");
+			}
+			return null;
+		}
+		return new GrammarNode("NUMBER", codeScanner.tokenText());
+	}
+
+	/**
+	 * Checks the turtle program for syntax errors in the same way as checkProgram(), but builds the compact
+	 * Abstract Syntax Tree directly from the lexer's tokens instead of building a tree of GrammarNodes.
+	 * If the program contains syntax errors, it returns null instead.
+	 * @return The compact form of the turtle program, or null if the program contains syntax errors
+	 */
+	public TurtleProgram checkCompactProgram() {
+		symbols = new SymbolTable();
+		statementCount = 0;
+
+		AstNode[] body = checkCompactBlock();
+
+		if (body == null) {
+			return null;
+		}
+
+		if (codeScanner.hasNext()) {
+			currentToken = codeScanner.nextToken();
+
+			if (currentToken != TokenType.PROGRAM_END) {
+				syntaxError("Syntax Error: Missing programEnd statement.");
+				return null;
+			}
+
+		} else {
+			syntaxError("Syntax Error: Missing programEnd statement.");
+			return null;
+		}
+
+		return new TurtleProgram(new AstNode(NodeKind.PROGRAM, AstNode.NO_VARIABLE, 0, body), symbols);
+	}
+
+	/**
+	 * Helper method that reads a block and returns the statements it contains.
+	 * @return The statements of the block, or null if the block is not valid
+	 */
+	private AstNode[] checkCompactBlock() {
+
+		if (codeScanner.hasNext()) {
+			currentToken = codeScanner.nextToken();
+		} else {
+			currentToken = null;
+		}
+		if (currentToken != TokenType.BEGIN) {
+			syntaxError("Syntax Error: Missing begin statement for program block.");
+			return null;
+		}
+
+		int first = statementCount;
+		AstNode statement = checkCompactStatement();
+		if (statement == null) {
+			if (currentToken == TokenType.END) {
+				syntaxError("Syntax Error: Block has no statements.");
+			} else {
+				syntaxError("Syntax Error: Missing end statement for program block.");
+			}
+			return null;
+		}
+		while (statement != null) {
+			if (statementCount == statements.length) {
+				statements = Arrays.copyOf(statements, statementCount * 2);
+			}
+			statements[statementCount++] = statement;
+			statement = checkCompactStatement();
+		}
+
+		AstNode[] body = Arrays.copyOfRange(statements, first, statementCount);
+		Arrays.fill(statements, first, statementCount, null);
+		statementCount = first;
+
+		if (error) {
+			return null;
+		}
+
+		if (currentToken != TokenType.END) {
+			syntaxError("Syntax Error: Missing end statement for program block.");
+			return null;
+		}
+
+		return body;
+	}
+
+	/**
+	 * Helper method that reads a statement and returns the loop or command node for it.
+	 * @return The node for the statement, or null if there are no more statements in the block
+	 */
+	private AstNode checkCompactStatement() {
+
+		if (codeScanner.hasNext())
+			currentToken = codeScanner.nextToken();
+		else
+			return null;
+
+		if (currentToken == TokenType.LOOP) {
+			AstNode loopNode = checkCompactLoop();
+			if (loopNode != null || error) {
+				return loopNode;
 			}
+		}
+
+		return checkCompactCommand();
+	}
+
+	/**
+	 * Helper method that returns a LOOP node.
+	 * @return A LOOP node, or null if the loop is not valid
+	 */
+	private AstNode checkCompactLoop() {
+
+		if (!checkCompactOperand()) {
 			return null;
 		}
-		return new GrammarNode("NUMBER", currentWord.data);
+		int variable = operandVariable;
+		int number = operandNumber;
+
+		AstNode[] body = checkCompactBlock();
+		if (body == null) {
+			return null;
+		}
+
+		return new AstNode(NodeKind.LOOP, variable, number, body);
+	}
+
+	/**
+	 * Helper method that returns a FORWARD, TURN or ASSIGNMENT node.
+	 * @return A command node, or null if the current word ends the block or the command is not valid
+	 */
+	private AstNode checkCompactCommand() {
+
+		if (currentToken == TokenType.END) {
+			return null;
+		}
+
+		if (currentToken != TokenType.FORWARD && currentToken != TokenType.TURN) {
+			return checkCompactAssignment();
+		}
+
+		NodeKind kind = currentToken == TokenType.FORWARD ? NodeKind.FORWARD : NodeKind.TURN;
+
+		if (!checkCompactOperand()) {
+			return null;
+		}
+
+		return new AstNode(kind, operandVariable, operandNumber, AstNode.NO_CHILDREN);
+	}
+
+	/**
+	 * Helper method that returns an ASSIGNMENT node.
+	 * @return An ASSIGNMENT node, or null if the assignment is not valid
+	 */
+	private AstNode checkCompactAssignment() {
+
+		if (!checkCompactVariable()) {
+			return null;
+		}
+		int variable = operandVariable;
+
+		if (codeScanner.hasNext()) {
+			currentToken = codeScanner.nextToken();
+		} else {
+			syntaxError("Syntax Error: Missing end statement for program block.");
+			return null;
+		}
+
+		if (currentToken != TokenType.EQUALS) {
+			syntaxError("Syntax Error: Expected \"=\", but found \"" + codeScanner.tokenText() + "\"");
+			return null;
+		}
+
+		if (!checkCompactNumber()) {
+			return null;
+		}
+
+		return new AstNode(NodeKind.ASSIGNMENT, variable, operandNumber, AstNode.NO_CHILDREN);
+	}
+
+	/**
+	 * Helper method that reads a distance, angle or count, and stores it in operandVariable and operandNumber.
+	 * @return True if the operand is valid, false otherwise
+	 */
+	private boolean checkCompactOperand() {
+		if (checkCompactNumber()) {
+			operandVariable = AstNode.NO_VARIABLE;
+			return true;
+		}
+		if (error) {
+			return false;
+		}
+		operandNumber = 0;
+		return checkCompactVariable();
+	}
+
+	/**
+	 * Helper method that checks that the current word is a variable name, and stores its id in operandVariable.
+	 * @return True if the current word is a valid variable name, false otherwise
+	 */
+	private boolean checkCompactVariable() {
+		if (currentToken.isWord()) {
+			operandVariable = symbols.intern(codeScanner.tokenText());
+			return true;
+		}
+		syntaxError("Syntax Error: Invalid variable name \"" + codeScanner.tokenText() + "\"");
+		return false;
+	}
+
+	/**
+	 * Helper method that reads the next word and, if it is a number, stores its value in operandNumber.
+	 * @return True if the next word is a number, false otherwise
+	 */
+	private boolean checkCompactNumber() {
+
+		if (codeScanner.hasNext())
+			currentToken = codeScanner.nextToken();
+		else
+			return false;
+
+		if (currentToken != TokenType.NUMBER) {
+			if (!currentToken.isWord()) {
+				syntaxError("Syntax Error: Invalid number \"" + codeScanner.tokenText() + "\"");
+			}
+			return false;
+		}
+
+		try {
+			operandNumber = codeScanner.tokenNumber();
+		} catch (NumberFormatException e) {
+			syntaxError("Syntax Error: Invalid number \"" + codeScanner.tokenText() + "\"");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method that reports a syntax error, unless an error has already been reported.
+	 * @param message The message describing the error
+	 */
+	private void syntaxError(String message) {
+		if (!error) {
+			error = true;
+			errorMessage = message;
+			if (printErrors) {
+				System.out.println(message);
+			}
+		}
+	}
+
+	/**
+	 * Returns the syntax error found by checkProgram() or checkCompactProgram(), if it found one.
+	 * @return The message describing the first syntax error, or null if none has been found
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	/**
+	 * Returns whether a syntax error has been found. checkProgram() can return a tree even after it has found one.
+	 * @return True if a syntax error has been found
+	 */
+	boolean hasError() {
+		return error;
+	}
+
+	/**
+	 * Sets whether checkProgram() and checkCompactProgram() print the syntax error they find. This is on by default;
+	 * when it is off, the error can still be read with getErrorMessage().
+	 * @param printErrors True to print syntax errors, false to only keep them
+	 */
+	public void setPrintErrors(boolean printErrors) {
+		this.printErrors = printErrors;
 	}
 }
@@ -11,6 +11,10 @@ import static org.junit.Assert.*;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Before;
@@ -87,4 +91,215 @@ public class TurtleParserTest {
 		assertEquals(new GrammarNode("TERMINAL", "begin"), tl.next());
 		assertEquals(false, tl.hasNext());
 	}
+	
+	@Test
+	public void testMappedLexer() {
+		MappedTurtleLexer tl = new MappedTurtleLexer("testcases/lexertest.txt");
+		assertEquals(true, tl.hasNext());
+		assertEquals(new GrammarNode("TERMINAL", "begin"), tl.next());
+		assertEquals(0, tl.tokenStart());
+		assertEquals(5, tl.tokenEnd());
+		assertEquals(false, tl.hasNext());
+	}
+	
+	@Test(expected = java.io.UncheckedIOException.class)
+	public void testMappedLexerMissingFile() {
+		new MappedTurtleLexer("testcases/missing.txt");
+	}
+	
+	@Test
+	public void testMappedLexerMatchesScanner() {
+		String[] files = {"testProgramStep3.txt", "testcases/number.txt", "testcases/variable.txt"};
+		for (String file : files) {
+			TurtleLexer expected = new TurtleLexer(file);
+			TurtleLexer actual = new MappedTurtleLexer(file);
+			while (expected.hasNext()) {
+				assertEquals(true, actual.hasNext());
+				assertEquals(expected.next(), actual.next());
+			}
+			assertEquals(false, actual.hasNext());
+		}
+	}
+	
+	@Test
+	public void testCompactProgram() {
+		TurtleParser tp = new TurtleParser("testProgramStep3.txt");
+		TurtleProgram program = tp.checkCompactProgram();
+		assertEquals("", outContent.toString().trim());
+		
+		int times = program.symbols.intern("times");
+		int dist = program.symbols.intern("dist");
+		int angle = program.symbols.intern("angle");
+		assertEquals(3, program.symbols.size());
+		
+		AstNode[] loopBody = {
+			new AstNode(NodeKind.FORWARD, dist, 0, AstNode.NO_CHILDREN),
+			new AstNode(NodeKind.TURN, angle, 0, AstNode.NO_CHILDREN)
+		};
+		AstNode[] body = {
+			new AstNode(NodeKind.ASSIGNMENT, times, 4, AstNode.NO_CHILDREN),
+			new AstNode(NodeKind.FORWARD, AstNode.NO_VARIABLE, 10, AstNode.NO_CHILDREN),
+			new AstNode(NodeKind.TURN, AstNode.NO_VARIABLE, 90, AstNode.NO_CHILDREN),
+			new AstNode(NodeKind.ASSIGNMENT, dist, 40, AstNode.NO_CHILDREN),
+			new AstNode(NodeKind.ASSIGNMENT, angle, 60, AstNode.NO_CHILDREN),
+			new AstNode(NodeKind.LOOP, times, 0, loopBody),
+			new AstNode(NodeKind.ASSIGNMENT, angle, 90, AstNode.NO_CHILDREN),
+			new AstNode(NodeKind.TURN, angle, 0, AstNode.NO_CHILDREN),
+			new AstNode(NodeKind.TURN, angle, 0, AstNode.NO_CHILDREN),
+			new AstNode(NodeKind.FORWARD, dist, 0, AstNode.NO_CHILDREN)
+		};
+		assertEquals(new AstNode(NodeKind.PROGRAM, AstNode.NO_VARIABLE, 0, body), program.root);
+	}
+	
+	@Test
+	public void testCompactProgramErrors() {
+		String[] files = {"programEnd", "begin", "end", "equals", "variable", "number", "command"};
+		for (String file : files) {
+			outContent.reset();
+			new TurtleParser("testcases/" + file + ".txt").checkProgram();
+			String expected = outContent.toString();
+			
+			outContent.reset();
+			assertNull(new TurtleParser("testcases/" + file + ".txt").checkCompactProgram());
+			assertEquals(expected, outContent.toString());
+		}
+	}
+	
+	private static GrammarNode checkText(String program) {
+		return new TurtleParser(new MappedTurtleLexer(ByteBuffer.wrap(program.getBytes(StandardCharsets.UTF_8))))
+				.checkProgram();
+	}
+	
+	@Test(expected = java.io.UncheckedIOException.class)
+	public void testIncrementalParserMissingFile() {
+		new IncrementalParser("testcases/missing.txt");
+	}
+	
+	@Test
+	public void testIncrementalParser() {
+		String program = ProgramGenerator.flat(2000, 15)
+				.replace("end\nprogramEnd", "loop 3 begin forward 2 loop 2 begin turn 4 end end\nend\nprogramEnd");
+		IncrementalParser parser = new IncrementalParser(program.getBytes(StandardCharsets.UTF_8));
+		assertEquals(checkText(program), parser.getTree());
+		
+		// change a number in the innermost loop
+		int offset = program.lastIndexOf("turn 4") + 5;
+		program = program.substring(0, offset) + "45" + program.substring(offset + 1);
+		assertEquals(checkText(program), parser.edit(offset, 1, "45"));
+		assertTrue(parser.wasIncremental());
+		assertEquals(2, parser.getReparsedTokens());
+		
+		// add statements in the middle of the program
+		offset = program.indexOf("\n", program.length() / 2) + 1;
+		String inserted = "loop 5 begin forward 1 turn 2 end x = 4 ";
+		program = program.substring(0, offset) + inserted + program.substring(offset);
+		assertEquals(checkText(program), parser.edit(offset, 0, inserted));
+		assertTrue(parser.wasIncremental());
+		assertTrue(parser.getReparsedTokens() < 20);
+		
+		// only whitespace
+		program = program.substring(0, offset) + "\n\n" + program.substring(offset);
+		assertEquals(checkText(program), parser.edit(offset, 0, "\n\n"));
+		assertEquals(0, parser.getReparsedTokens());
+		
+		// break the program, then fix it again
+		offset = program.indexOf("loop 5 begin");
+		program = program.substring(0, offset) + program.substring(offset + 4);
+		assertNull(parser.edit(offset, 4, ""));
+		assertFalse(parser.wasIncremental());
+		assertTrue(outContent.toString().startsWith("Syntax Error"));
+		program = program.substring(0, offset) + "loop" + program.substring(offset);
+		assertEquals(checkText(program), parser.edit(offset, 0, "loop"));
+		assertEquals(program, parser.getSource());
+	}
+	
+	private static List<Diagnostic> validateText(String program) {
+		return new TurtleValidator(ByteBuffer.wrap(program.getBytes(StandardCharsets.UTF_8))).validate();
+	}
+	
+	@Test
+	public void testValidator() {
+		String[] valid = {"starProgram.txt", "testProgramStep1.txt", "testProgramStep2.txt", "testProgramStep3.txt",
+				"testcases/nestedLoop.txt", "testcases/longLoop.txt"};
+		for (String file : valid) {
+			assertTrue(file, new TurtleValidator(file).validate().isEmpty());
+		}
+		
+		// for these programs the first error is the one the parser reports, though that is not so for every program
+		String[] invalid = {"programEnd", "begin", "end", "equals", "variable", "number", "command"};
+		for (String file : invalid) {
+			TurtleParser parser = new TurtleParser("testcases/" + file + ".txt");
+			parser.setPrintErrors(false);
+			assertNull(parser.checkCompactProgram());
+			List<Diagnostic> diagnostics = new TurtleValidator("testcases/" + file + ".txt").validate();
+			assertFalse(file, diagnostics.isEmpty());
+			assertEquals(file, parser.getErrorMessage(), diagnostics.get(0).message);
+		}
+		assertEquals("", outContent.toString());
+		
+		// every error is found in one pass, and the rest of the program is still checked
+		List<Diagnostic> diagnostics = validateText("begin\n forward 10\n turn $\n x = 5\n"
+				+ "\tforward 1 2\n loop 3 begin forward 1 end\n y 7\nend\nprogramEnd\n");
+		assertEquals(3, diagnostics.size());
+		assertEquals("3:7: Syntax Error: Invalid number \"$\"", diagnostics.get(0).toString());
+		assertEquals("5:12: Syntax Error: Invalid variable name \"2\"", diagnostics.get(1).toString());
+		assertEquals("7:4: Syntax Error: Expected \"=\", but found \"7\"", diagnostics.get(2).toString());
+		assertEquals(1, diagnostics.get(2).length);
+		
+		diagnostics = validateText("begin\n loop 2 begin turn 4\nend\nprogramEnd");
+		assertEquals(1, diagnostics.size());
+		assertEquals("4:1: Syntax Error: Missing end statement for program block.", diagnostics.get(0).toString());
+		
+		diagnostics = validateText("begin forward 1 end");
+		assertEquals(1, diagnostics.size());
+		assertEquals(19, diagnostics.get(0).offset);
+		assertEquals(0, diagnostics.get(0).length);
+	}
+	
+	@Test
+	public void testValidatorAcceptsWhatParserAccepts() {
+		String[] words = {"begin", "end", "programEnd", "forward", "turn", "loop", "=", "x", "y", "5", "$"};
+		Random random = new Random(6031);
+		for (int i = 0; i < 3000; i++) {
+			StringBuilder program = new StringBuilder();
+			if (random.nextInt(4) == 0) {
+				for (int j = random.nextInt(12); j > 0; j--) {
+					program.append(words[random.nextInt(words.length)]).append(' ');
+				}
+			} else {
+				program.append("begin ");
+				randomStatements(program, random, 3, words);
+				program.append("end programEnd");
+			}
+			String text = program.toString();
+			TurtleParser parser = new TurtleParser(new MappedTurtleLexer(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8))));
+			parser.setPrintErrors(false);
+			boolean accepted = parser.checkCompactProgram() != null;
+			boolean valid = validateText(text).isEmpty();
+			if (accepted && !valid) {
+				// the programs the parser accepts by dropping a statement
+				String keyword = "(begin|end|programEnd|forward|turn|loop)";
+				assertTrue(text, text.matches(".*" + keyword + " =.*|.*= " + keyword + " .*|.*loop \\S+ begin end.*"));
+			} else {
+				assertEquals(text, accepted, valid);
+			}
+		}
+	}
+	
+	private static void randomStatements(StringBuilder program, Random random, int depth, String[] words) {
+		for (int i = random.nextInt(4); i > 0; i--) {
+			int kind = random.nextInt(8);
+			if (kind < 3) {
+				program.append(random.nextBoolean() ? "forward " : "turn ").append(random.nextInt(8) == 0 ? "x " : "5 ");
+			} else if (kind < 5) {
+				program.append(random.nextBoolean() ? "x = " : "y = ").append(random.nextInt(8) == 0 ? "y " : "7 ");
+			} else if (kind < 7 && depth > 0) {
+				program.append("loop 3 begin ");
+				randomStatements(program, random, depth - 1, words);
+				program.append("end ");
+			} else {
+				program.append(words[random.nextInt(words.length)]).append(' ');
+			}
+		}
+	}
 }
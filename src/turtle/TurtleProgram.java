@@ -0,0 +1,25 @@
+/**
+ * This class holds a parsed Turtle Graphics program in its compact form: the root of the compact
+ * Abstract Syntax Tree, and the table of variable names that its nodes refer to.
+ * 
+ * @author Patrick Liem
+ * 
+ */
+
+package turtle;
+
+public class TurtleProgram {
+	
+	public final AstNode root;
+	public final SymbolTable symbols;
+	
+	/**
+	 * Constructs a new TurtleProgram object.
+	 * @param root The PROGRAM node at the root of the tree
+	 * @param symbols The variables that the tree refers to
+	 */
+	public TurtleProgram(AstNode root, SymbolTable symbols) {
+		this.root = root;
+		this.symbols = symbols;
+	}
+}
@@ -0,0 +1,393 @@
+/**
+ * This class draws turtle line segments into an array of pixels in memory, without opening a window, so that
+ * drawings can be rendered on machines that have no display. The origin is at the center of the image and
+ * y increases upwards, as in TurtleGUI. The pixels can then be turned into a BufferedImage or saved as a PNG file.
+ *
+ * Large lists of segments can be drawn in parallel: the image is divided into square tiles, and each segment is
+ * followed from tile to tile, without drawing it, to record the point where its Bresenham walk enters each tile
+ * it crosses.
+ * The tiles are then drawn at the same time on a fork/join pool, each resuming the walk of each of its segments
+ * from where it entered and stopping where it leaves, so every pixel is visited by one tile and the tiles
+ * together do no more walking than drawing the segments one after another. Each tile draws its segments in
+ * their original order and only sets its own pixels, so the result is exactly the same as drawing the segments
+ * one after another. The tiles only save time when there are several processors to draw them.
+ *
+ * A TurtleRenderer is also a SegmentSink, so a streaming DrawableTurtle can draw into it as the program runs.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+
+public class TurtleRenderer implements SegmentSink {
+
+	private static final int BACKGROUND = Color.WHITE.getRGB() & 0xFFFFFF;
+
+	static final int TILE_SIZE = 64;
+	static final int PARALLEL_THRESHOLD = 4096;
+	// the ints in an entry of a segment into a tile while binning, and in a run of it drawn by the tile
+	private static final int ENTRY = 5;
+	private static final int RUN = 4;
+
+	private final int width;
+	private final int height;
+	private final int originX;
+	private final int originY;
+	private final int[] pixels;
+	private final int[] clipped = new int[4];
+
+	private boolean parallel = false;
+
+	/**
+	 * Creates a new TurtleRenderer object with a blank image of the given size
+	 * @param width The width of the image in pixels
+	 * @param height The height of the image in pixels
+	 */
+	public TurtleRenderer(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.originX = (width - 1) / 2;
+		this.originY = (height - 1) / 2;
+		this.pixels = new int[width * height];
+		Arrays.fill(pixels, BACKGROUND);
+	}
+
+	/**
+	 * Sets whether large lists of segments are drawn tile by tile in parallel. This is off by default.
+	 * @param parallel True to draw large lists of segments in parallel
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
+	/**
+	 * Draws a list of line segments, in order.
+	 * @param lines The line segments to draw
+	 */
+	public void drawLines(List<LineSegment> lines) {
+		SegmentStore segments = new SegmentStore(lines.size());
+		for (LineSegment line : lines) {
+			segments.add(line.start.x, line.start.y, line.end.x, line.end.y, line.color);
+		}
+		drawSegments(segments);
+	}
+
+	/**
+	 * Draws the segments in a SegmentStore, in order.
+	 * @param segments The line segments to draw
+	 */
+	public void drawSegments(SegmentStore segments) {
+		// with a single worker the tiles would only be drawn one after another, after the segments are binned
+		if (parallel && segments.size() >= PARALLEL_THRESHOLD && ForkJoinPool.commonPool().getParallelism() > 1) {
+			drawTiles(segments);
+			return;
+		}
+		for (int i = 0; i < segments.size(); i++) {
+			drawLine(segments.startX[i], segments.startY[i], segments.endX[i], segments.endY[i], segments.color(i));
+		}
+	}
+
+	@Override
+	public void accept(SegmentStore batch) {
+		drawSegments(batch);
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Draws one line segment, given in turtle coordinates.
+	 * @param startX The x-coordinate of the start of the segment
+	 * @param startY The y-coordinate of the start of the segment
+	 * @param endX The x-coordinate of the end of the segment
+	 * @param endY The y-coordinate of the end of the segment
+	 * @param color The color of the segment
+	 */
+	public void drawLine(double startX, double startY, double endX, double endY, PenColor color) {
+		if (clip(originX + startX, originY - startY, originX + endX, originY - endY, width, height, clipped, 0)) {
+			plotLine(pixels, width, 0, 0, width, height, clipped[0], clipped[1], clipped[2], clipped[3], rgb(color));
+		}
+	}
+
+	/**
+	 * Helper method that draws a list of line segments tile by tile in parallel. Each segment is first followed
+	 * from tile to tile, without drawing it, to find the tiles its pixels are in and the state of its walk where
+	 * it enters each of them; each tile then draws only its own part of the segment, from where the segment
+	 * enters it until it leaves.
+	 * @param segments The line segments to draw
+	 */
+	void drawTiles(SegmentStore segments) {
+		int count = segments.size();
+		int[] ends = new int[count * 4];
+		int[] colors = new int[count];
+		int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+		// where each segment enters each tile, in drawing order, as {tile, segment, x, y, error} with the state of
+		// plotLine()'s walk at the first pixel in the tile
+		int[] entries = new int[Math.max(ENTRY, count * 2 * ENTRY)];
+		int size = 0;
+		int[] tileStart = new int[tilesX * tilesY + 1];
+		for (int i = 0; i < count; i++) {
+			if (!clip(originX + segments.startX[i], originY - segments.startY[i],
+					originX + segments.endX[i], originY - segments.endY[i], width, height, ends, i * 4)) {
+				continue;
+			}
+			colors[i] = rgb(segments.color(i));
+			int x0 = ends[i * 4];
+			int y0 = ends[i * 4 + 1];
+			int dx = Math.abs(ends[i * 4 + 2] - x0);
+			int dy = Math.abs(ends[i * 4 + 3] - y0);
+			int stepX = x0 < ends[i * 4 + 2] ? 1 : -1;
+			int stepY = y0 < ends[i * 4 + 3] ? 1 : -1;
+			// the walk takes a step along the major axis every time, and after k of them it has taken
+			// (2 k minor + major) / (2 major) steps along the minor axis, so it can jump from tile to tile
+			boolean xMajor = dx >= dy;
+			long major = Math.max(dx, dy);
+			long minor = Math.min(dx, dy);
+			long k = 0;
+			while (k <= major) {
+				long m = major == 0 ? 0 : (2 * k * minor + major) / (2 * major);
+				int x = x0 + stepX * (int) (xMajor ? k : m);
+				int y = y0 + stepY * (int) (xMajor ? m : k);
+				if (x < 0 || x >= width || y < 0 || y >= height) {
+					// the ends of a clipped line can be one pixel outside the image
+					k++;
+					continue;
+				}
+				int tileX = x / TILE_SIZE;
+				int tileY = y / TILE_SIZE;
+				if (size + ENTRY > entries.length) {
+					entries = Arrays.copyOf(entries, entries.length * 2);
+				}
+				entries[size] = tileY * tilesX + tileX;
+				entries[size + 1] = i;
+				entries[size + 2] = x;
+				entries[size + 3] = y;
+				// the error term of plotLine() after those steps
+				entries[size + 4] = (int) ((Math.abs(y - y0) + 1L) * dx - (Math.abs(x - x0) + 1L) * dy);
+				size += ENTRY;
+				tileStart[tileY * tilesX + tileX + 1]++;
+
+				// jump to the first step that leaves the tile along either axis
+				int leaveX = stepX > 0 ? Math.min(width, (tileX + 1) * TILE_SIZE) - x : x - tileX * TILE_SIZE + 1;
+				int leaveY = stepY > 0 ? Math.min(height, (tileY + 1) * TILE_SIZE) - y : y - tileY * TILE_SIZE + 1;
+				long next = k + (xMajor ? leaveX : leaveY);
+				if (minor > 0) {
+					long leaveMinor = 2 * major * (m + (xMajor ? leaveY : leaveX)) - major;
+					next = Math.min(next, (leaveMinor + 2 * minor - 1) / (2 * minor));
+				}
+				k = next;
+			}
+		}
+		for (int t = 0; t < tilesX * tilesY; t++) {
+			tileStart[t + 1] += tileStart[t];
+		}
+
+		// sort the entries by tile, keeping drawing order, so tile t's are runs[tileStart[t]..tileStart[t + 1]]
+		// as {segment, x, y, error}
+		int[] next = Arrays.copyOf(tileStart, tileStart.length);
+		int[] runs = new int[size / ENTRY * RUN];
+		for (int e = 0; e < size; e += ENTRY) {
+			int r = next[entries[e]]++ * RUN;
+			runs[r] = entries[e + 1];
+			runs[r + 1] = entries[e + 2];
+			runs[r + 2] = entries[e + 3];
+			runs[r + 3] = entries[e + 4];
+		}
+
+		ForkJoinPool.commonPool().invoke(new TileTask(tilesX, tileStart, runs, ends, colors, 0, tilesX * tilesY));
+	}
+
+	/**
+	 * Fork/join task that draws a range of tiles, splitting it in half until it is a single tile.
+	 */
+	private class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int tilesX;
+		private final int[] tileStart;
+		private final int[] runs;
+		private final int[] ends;
+		private final int[] colors;
+		private final int from;
+		private final int to;
+
+		TileTask(int tilesX, int[] tileStart, int[] runs, int[] ends, int[] colors, int from, int to) {
+			this.tilesX = tilesX;
+			this.tileStart = tileStart;
+			this.runs = runs;
+			this.ends = ends;
+			this.colors = colors;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new TileTask(tilesX, tileStart, runs, ends, colors, from, middle),
+						new TileTask(tilesX, tileStart, runs, ends, colors, middle, to));
+				return;
+			}
+			int minX = (from % tilesX) * TILE_SIZE;
+			int minY = (from / tilesX) * TILE_SIZE;
+			int maxX = Math.min(width, minX + TILE_SIZE);
+			int maxY = Math.min(height, minY + TILE_SIZE);
+			for (int r = tileStart[from] * RUN; r < tileStart[from + 1] * RUN; r += RUN) {
+				int i = runs[r];
+				plotRun(pixels, width, minX, minY, maxX, maxY, ends[i * 4], ends[i * 4 + 1], ends[i * 4 + 2],
+						ends[i * 4 + 3], runs[r + 1], runs[r + 2], runs[r + 3], colors[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the pixels of the image, one int per pixel in 0xRRGGBB form, row by row from the top left.
+	 * @return The pixels of the image
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	/**
+	 * Copies the image into a BufferedImage.
+	 * @return A BufferedImage holding the image
+	 */
+	public BufferedImage toImage() {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, width, height, pixels, 0, width);
+		return image;
+	}
+
+	/**
+	 * Saves the image as a PNG file.
+	 * @param file The file to save the image to
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writePng(String file) throws IOException {
+		ImageIO.write(toImage(), "png", new File(file));
+	}
+
+	static int rgb(PenColor color) {
+		return color.color.getRGB() & 0xFFFFFF;
+	}
+
+	/**
+	 * Helper method that clips a line given in pixel coordinates to an image (with a margin of one pixel, so
+	 * that lines ending on the border are not shortened) and converts its ends to whole pixels.
+	 * @param out The array to store the pixel coordinates {fromX, fromY, toX, toY} of the clipped line in
+	 * @param offset The index in out to store them at
+	 * @return True if some of the line is on the image, false otherwise
+	 */
+	static boolean clip(double x0, double y0, double x1, double y1, int width, int height, int[] out, int offset) {
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		double t0 = 0;
+		double t1 = 1;
+		double[] p = {-dx, dx, -dy, dy};
+		double[] q = {x0 + 1, width - x0, y0 + 1, height - y0};
+		for (int i = 0; i < 4; i++) {
+			if (p[i] == 0) {
+				if (q[i] < 0) {
+					return false;
+				}
+			} else {
+				double t = q[i] / p[i];
+				if (p[i] < 0) {
+					t0 = Math.max(t0, t);
+				} else {
+					t1 = Math.min(t1, t);
+				}
+			}
+		}
+		if (t0 > t1) {
+			return false;
+		}
+		out[offset] = (int) (x0 + t0 * dx);
+		out[offset + 1] = (int) (y0 + t0 * dy);
+		out[offset + 2] = (int) (x0 + t1 * dx);
+		out[offset + 3] = (int) (y0 + t1 * dy);
+		return true;
+	}
+
+	/**
+	 * Helper method that plots a line from one pixel to another with Bresenham's algorithm, only setting the pixels
+	 * that fall inside the given rectangle of the image.
+	 * @param pixels The pixels of the image
+	 * @param stride The width of the image
+	 * @param minX The left edge of the rectangle
+	 * @param minY The top edge of the rectangle
+	 * @param maxX The right edge of the rectangle (exclusive)
+	 * @param maxY The bottom edge of the rectangle (exclusive)
+	 */
+	static void plotLine(int[] pixels, int stride, int minX, int minY, int maxX, int maxY,
+			int x0, int y0, int x1, int y1, int rgb) {
+		int dx = Math.abs(x1 - x0);
+		int dy = -Math.abs(y1 - y0);
+		int stepX = x0 < x1 ? 1 : -1;
+		int stepY = y0 < y1 ? 1 : -1;
+		int error = dx + dy;
+		while (true) {
+			if (x0 >= minX && x0 < maxX && y0 >= minY && y0 < maxY) {
+				pixels[y0 * stride + x0] = rgb;
+			}
+			if (x0 == x1 && y0 == y1) {
+				break;
+			}
+			int error2 = 2 * error;
+			if (error2 >= dy) {
+				error += dy;
+				x0 += stepX;
+			}
+			if (error2 <= dx) {
+				error += dx;
+				y0 += stepY;
+			}
+		}
+	}
+
+	/**
+	 * Helper method that plots the part of a line, drawn with Bresenham's algorithm as plotLine() draws it, that
+	 * lies in a rectangle of the image, resuming the walk from the first pixel of the line in the rectangle.
+	 * @param x The x-coordinate of the first pixel of the line in the rectangle
+	 * @param y The y-coordinate of the first pixel of the line in the rectangle
+	 * @param error The error term of the walk at that pixel
+	 */
+	static void plotRun(int[] pixels, int stride, int minX, int minY, int maxX, int maxY,
+			int x0, int y0, int x1, int y1, int x, int y, int error, int rgb) {
+		int dx = Math.abs(x1 - x0);
+		int dy = -Math.abs(y1 - y0);
+		int stepX = x0 < x1 ? 1 : -1;
+		int stepY = y0 < y1 ? 1 : -1;
+		while (x >= minX && x < maxX && y >= minY && y < maxY) {
+			pixels[y * stride + x] = rgb;
+			if (x == x1 && y == y1) {
+				break;
+			}
+			int error2 = 2 * error;
+			if (error2 >= dy) {
+				error += dy;
+				x += stepX;
+			}
+			if (error2 <= dx) {
+				error += dx;
+				y += stepY;
+			}
+		}
+	}
+}
@@ -0,0 +1,374 @@
+/**
+ * This class is used to test the TurtleRenderer class. It checks that line segments are drawn into the right
+ * pixels, that segments that go off the edge of the image are clipped, and that simplifying a drawing merges its
+ * collinear and retraced segments without changing what is drawn, and that the segment index finds the same segments
+ * as checking every one.
+ * 
+ * @author Patrick Liem
+ */
+package turtle;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TurtleRendererTest {
+	
+	private static final int WHITE = 0xFFFFFF;
+	private static final int RED = TurtleRenderer.rgb(PenColor.RED);
+	
+	@Test
+	public void testHorizontalLine() {
+		TurtleRenderer renderer = new TurtleRenderer(9, 9);
+		renderer.drawLine(-2, 1, 2, 1, PenColor.RED);
+		int[] pixels = renderer.getPixels();
+		// the origin is pixel (4, 4), and y increases upwards
+		for (int x = 0; x < 9; x++) {
+			assertEquals(x >= 2 && x <= 6 ? RED : WHITE, pixels[3 * 9 + x]);
+		}
+		assertEquals(WHITE, pixels[4 * 9 + 4]);
+	}
+	
+	@Test
+	public void testClipping() {
+		TurtleRenderer renderer = new TurtleRenderer(9, 9);
+		renderer.drawLine(0, -1e9, 0, 1e9, PenColor.RED);
+		renderer.drawLine(100, 100, 200, 200, PenColor.RED);
+		int[] pixels = renderer.getPixels();
+		for (int y = 0; y < 9; y++) {
+			for (int x = 0; x < 9; x++) {
+				assertEquals(x == 4 ? RED : WHITE, pixels[y * 9 + x]);
+			}
+		}
+	}
+	
+	@Test
+	public void testParallelMatchesSequential() {
+		Random random = new Random(6005);
+		PenColor[] colors = PenColor.values();
+		List<LineSegment> lines = new ArrayList<LineSegment>();
+		for (int i = 0; i < 2 * TurtleRenderer.PARALLEL_THRESHOLD; i++) {
+			lines.add(new LineSegment(random.nextGaussian() * 150, random.nextGaussian() * 150,
+					random.nextGaussian() * 150, random.nextGaussian() * 150, colors[random.nextInt(colors.length)]));
+		}
+		
+		// long diagonals that cross the whole canvas, and go past its edges, in every direction
+		for (int i = 0; i < 64; i++) {
+			double reach = 150 + i * 5;
+			lines.add(new LineSegment(-reach, -reach * 0.7 + i, reach, reach * 0.7 - i, colors[i % colors.length]));
+			lines.add(new LineSegment(reach - i, -reach, -reach, reach + i, colors[(i + 1) % colors.length]));
+		}
+		
+		TurtleRenderer sequential = new TurtleRenderer(300, 200);
+		sequential.drawLines(lines);
+		TurtleRenderer parallel = new TurtleRenderer(300, 200);
+		parallel.setParallel(true);
+		parallel.drawLines(lines);
+		assertArrayEquals(sequential.getPixels(), parallel.getPixels());
+		
+		// the tiles are drawn even where the pool has a single worker and drawLines() draws the segments in turn
+		SegmentStore segments = new SegmentStore(lines.size());
+		for (LineSegment line : lines) {
+			segments.add(line.start.x, line.start.y, line.end.x, line.end.y, line.color);
+		}
+		TurtleRenderer tiled = new TurtleRenderer(300, 200);
+		tiled.drawTiles(segments);
+		assertArrayEquals(sequential.getPixels(), tiled.getPixels());
+	}
+	
+	@Test
+	public void testSimplifier() {
+		SegmentStore segments = new SegmentStore();
+		segments.add(0, 0, 0, 1, PenColor.RED);
+		segments.add(0, 1, 0, 2, PenColor.RED);
+		segments.add(1, 0, 1, 1, PenColor.RED);
+		// a retrace, drawn the other way, and a segment that overlaps the end of the line and goes on past it
+		segments.add(0, 2, 0, 0, PenColor.RED);
+		segments.add(0, 1.5, 0, 3, PenColor.RED);
+		// the same line in another color, and a point drawn twice
+		segments.add(0, 0, 0, 1, PenColor.BLUE);
+		segments.add(5, 5, 5, 5, PenColor.RED);
+		segments.add(5, 5, 5, 5, PenColor.RED);
+		
+		SegmentStore simplified = SegmentSimplifier.simplify(segments);
+		assertEquals(4, simplified.size());
+		assertEquals("[(0.0,0.0) (0.0,3.0) RED]", toString(simplified, 0));
+		assertEquals("[(1.0,0.0) (1.0,1.0) RED]", toString(simplified, 1));
+		assertEquals("[(0.0,0.0) (0.0,1.0) BLUE]", toString(simplified, 2));
+		assertEquals("[(5.0,5.0) (5.0,5.0) RED]", toString(simplified, 3));
+		
+		// a star drawn 1002 times over, and then a line on top of one of its edges
+		TurtleEngine engine = new TurtleEngine();
+		engine.setMemoizeLoops(false);
+		DrawableTurtle turtle = new DrawableTurtle();
+		engine.run("testcases/periodicLoop.txt", turtle);
+		simplified = SegmentSimplifier.simplify(turtle.segments);
+		assertEquals(1003, turtle.segments.size());
+		assertEquals(5, simplified.size());
+		
+		TurtleRenderer expected = new TurtleRenderer(DrawableTurtle.canvasWidth, DrawableTurtle.canvasHeight);
+		expected.drawSegments(turtle.segments);
+		TurtleRenderer actual = new TurtleRenderer(DrawableTurtle.canvasWidth, DrawableTurtle.canvasHeight);
+		actual.drawSegments(simplified);
+		assertArrayEquals(expected.getPixels(), actual.getPixels());
+	}
+	
+	@Test
+	public void testSegmentIndex() {
+		Random random = new Random(6019);
+		SegmentStore segments = new SegmentStore();
+		for (int i = 0; i < 2000; i++) {
+			double x = random.nextGaussian() * 100;
+			double y = random.nextGaussian() * 100;
+			double length = i % 10 == 0 ? 0 : random.nextDouble() * (i % 3 == 0 ? 300 : 10);
+			double angle = random.nextDouble() * 2 * Math.PI;
+			segments.add(x, y, x + length * Math.cos(angle), y + length * Math.sin(angle), PenColor.BLACK);
+		}
+		SegmentIndex index = new SegmentIndex(segments);
+		
+		for (int q = 0; q < 200; q++) {
+			double left = random.nextGaussian() * 150;
+			double bottom = random.nextGaussian() * 150;
+			double right = left + random.nextDouble() * 50;
+			double top = bottom + random.nextDouble() * 50;
+			List<Integer> expected = new ArrayList<Integer>();
+			for (int i = 0; i < segments.size(); i++) {
+				if (crosses(segments, i, left, bottom, right, top)) {
+					expected.add(i);
+				}
+			}
+			int[] found = index.query(left, bottom, right, top);
+			assertEquals(expected.size(), found.length);
+			for (int i = 0; i < found.length; i++) {
+				assertEquals((int) expected.get(i), found[i]);
+			}
+			
+			double x = random.nextGaussian() * 200;
+			double y = random.nextGaussian() * 200;
+			double nearest = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < segments.size(); i++) {
+				nearest = Math.min(nearest, distance(segments, i, x, y));
+			}
+			assertEquals(nearest, distance(segments, index.nearest(x, y), x, y), 0);
+		}
+		
+		// the index of a turtle leads back to the actions that drew each segment
+		DrawableTurtle turtle = new DrawableTurtle();
+		new TurtleEngine().run("testProgramStep2.txt", turtle);
+		index = new SegmentIndex(turtle);
+		// the last side of the square is drawn over the first line, so it is the one on top
+		int segment = index.nearest(0.5, 5);
+		assertEquals(4, segment);
+		assertEquals(8, index.actionOf(segment));
+		assertEquals("forward 40 steps", turtle.actionList.get(index.actionOf(segment)).toString());
+		assertEquals(-1, index.nearest(1000, 1000, 10));
+	}
+	
+	@Test
+	public void testViewport() {
+		// a new viewport maps the drawing the way the GUI always has
+		Viewport viewport = new Viewport(512, 512);
+		assertEquals(255, viewport.toScreenX(0), 0);
+		assertEquals(255, viewport.toScreenY(0), 0);
+		assertEquals(295, viewport.toScreenX(40), 0);
+		assertEquals(215, viewport.toScreenY(40), 0);
+	
+		// zooming keeps the point under the cursor where it is
+		viewport.pan(30, -20);
+		double x = viewport.toDrawingX(100);
+		double y = viewport.toDrawingY(400);
+		viewport.zoom(4, 100, 400);
+		assertEquals(4, viewport.getScale(), 0);
+		assertEquals(100, viewport.toScreenX(x), 1e-9);
+		assertEquals(400, viewport.toScreenY(y), 1e-9);
+		assertEquals(x, viewport.toDrawingX(viewport.toScreenX(x)), 1e-9);
+	
+		// fitting a drawing shows all of it
+		viewport.fit(-1000, 10, 3000, 20);
+		assertTrue(viewport.getLeft() < -1000 && viewport.getRight() > 3000);
+		assertTrue(viewport.getBottom() < 10 && viewport.getTop() > 20);
+		assertTrue(viewport.toScreenX(-1000) > 0 && viewport.toScreenX(3000) < 511);
+	
+		viewport.reset();
+		assertEquals(1, viewport.getScale(), 0);
+		assertEquals(255, viewport.toScreenX(0), 0);
+	}
+	
+	@Test
+	public void testActionTimeline() {
+		DrawableTurtle turtle = new DrawableTurtle();
+		turtle.forward(10);
+		turtle.turn(90);
+		turtle.color(PenColor.RED);
+		turtle.forward(30);
+		ActionTimeline timeline = new ActionTimeline(turtle.actionList, 20);
+		assertEquals(4, timeline.size());
+		assertEquals(60, timeline.getTotalLength(), 0);
+		assertEquals(30, timeline.lengthBefore(2), 0);
+		assertEquals(30, timeline.lengthBefore(3), 0);
+		assertEquals(1, timeline.segmentsBefore(3));
+		assertEquals(2, timeline.segmentsBefore(4));
+		assertTrue(timeline.drawsSegment(3));
+		assertFalse(timeline.drawsSegment(1));
+		
+		// a color change takes no time, so it is finished as soon as the turn before it is
+		assertEquals(0, timeline.actionsWithin(0));
+		assertEquals(1, timeline.actionsWithin(10));
+		assertEquals(1, timeline.actionsWithin(29.9));
+		assertEquals(3, timeline.actionsWithin(30));
+		assertEquals(4, timeline.actionsWithin(60));
+		assertEquals(4, timeline.actionsWithin(1000));
+		assertEquals(0, new ActionTimeline(new ArrayList<Action>(), 20).actionsWithin(5));
+	}
+	
+	@Test
+	public void testVectorExport() throws IOException {
+		SegmentStore segments = new SegmentStore();
+		segments.add(0, 0, 0, 10, PenColor.RED);
+		segments.add(0, 10, -2.5, 10, PenColor.RED);
+		segments.add(-2.5, 10, 100.125, -0.004, PenColor.RED);
+		// a gap, a new color, and a segment far off the canvas that is left out
+		segments.add(1, 1, 2, 2, PenColor.RED);
+		segments.add(2, 2, 3, 3, PenColor.BLUE);
+		segments.add(1e9, 1e9, 2e9, 1e9, PenColor.BLUE);
+		
+		File file = File.createTempFile("turtle", ".svg");
+		file.deleteOnExit();
+		VectorExporter.export(segments, file.getPath(), VectorExporter.Format.SVG, 9, 9);
+		String svg = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+		// the origin is the center of pixel (4, 4), and y increases downwards
+		assertTrue(svg.startsWith("<?xml"));
+		assertTrue(svg.contains("<path stroke=\"#ff0000\" d=\"M4.5 4.5L4.5 -5.5L2 -5.5L104.63 4.5M5.5 3.5L6.5 2.5\"/>\n"
+				+ "<path stroke=\"#0000ff\" d=\"M6.5 2.5L7.5 1.5\"/>\n</g>\n</svg>\n"));
+		
+		VectorExporter.export(segments, file.getPath(), VectorExporter.Format.POSTSCRIPT, 9, 9);
+		String postScript = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+		// y increases upwards, from the bottom of the page
+		assertTrue(postScript.startsWith("%!PS-Adobe-3.0 EPSF-3.0\n%%BoundingBox: 0 0 9 9\n"));
+		assertTrue(postScript.contains("1.0 0.0 0.0 setrgbcolor newpath\n4.5 4.5 m 4.5 14.5 l\n2 14.5 l\n"));
+		assertTrue(postScript.endsWith("0.0 0.0 1.0 setrgbcolor newpath\n6.5 6.5 m 7.5 7.5 l\nstroke\nshowpage\n%%EOF\n"));
+	}
+	
+	@Test
+	public void testSegmentFile() throws IOException {
+		// a drawing whose coordinates are far from the origin, and a gap between its two colors
+		TurtleEngine engine = new TurtleEngine();
+		engine.setMemoizeLoops(false);
+		DrawableTurtle turtle = new DrawableTurtle();
+		engine.run("testcases/periodicLoop.txt", turtle);
+		SegmentStore segments = turtle.segments;
+		segments.add(1e6, -1e6, 1e6 + 0.1, -1e6 + 0.3, PenColor.GREEN);
+		segments.add(1e6 + 0.1, -1e6 + 0.3, 1e6 + 40, -1e6, PenColor.GREEN);
+		
+		File file = File.createTempFile("turtle", ".seg");
+		file.deleteOnExit();
+		SegmentFile.write(segments, file.getPath(), false);
+		SegmentFile drawing = new SegmentFile(file.getPath());
+		assertFalse(drawing.isCompact());
+		assertEquals(segments.size(), drawing.size());
+		assertEquals(1e6 + 40, drawing.getRight(), 0);
+		assertEquals(-1e6, drawing.getBottom(), 0);
+		SegmentStore loaded = drawing.toStore();
+		assertEquals(segments.size(), loaded.size());
+		for (int i = 0; i < segments.size(); i++) {
+			assertEquals(toString(segments, i), toString(loaded, i));
+		}
+		TurtleRenderer expected = new TurtleRenderer(DrawableTurtle.canvasWidth, DrawableTurtle.canvasHeight);
+		expected.drawSegments(segments);
+		TurtleRenderer actual = new TurtleRenderer(DrawableTurtle.canvasWidth, DrawableTurtle.canvasHeight);
+		drawing.replay(actual);
+		assertArrayEquals(expected.getPixels(), actual.getPixels());
+		assertEquals(segments.size(), DrawableTurtle.replay(drawing).actionList.size());
+		
+		// a compact file takes about two floats per segment
+		SegmentFile.write(segments, file.getPath(), true);
+		assertTrue(file.length() < 10L * segments.size());
+		drawing = new SegmentFile(file.getPath());
+		assertTrue(drawing.isCompact());
+		loaded = drawing.toStore();
+		for (int i = 0; i < segments.size(); i++) {
+			assertEquals(segments.color(i), loaded.color(i));
+			// each end is within the rounding of a float offset of its start, even a million steps from the origin
+			assertEquals(segments.startX(i), loaded.startX(i), 1e-5);
+			assertEquals(segments.startY(i), loaded.startY(i), 1e-5);
+			assertEquals(segments.endX(i), loaded.endX(i), 1e-5);
+			assertEquals(segments.endY(i), loaded.endY(i), 1e-5);
+		}
+		
+		// flags that no longer match the number of starts written, and a first segment that continues
+		byte[] written = Files.readAllBytes(file.toPath());
+		int flags = 56 + ByteBuffer.wrap(written).getInt(12) * 5;
+		assertTrue(written[flags + 1] != 0);
+		for (int corrupt = 0; corrupt < 2; corrupt++) {
+			byte[] damaged = written.clone();
+			if (corrupt == 0) {
+				damaged[flags + 1] = 0;
+			} else {
+				damaged[flags] |= 1;
+			}
+			Files.write(file.toPath(), damaged);
+			try {
+				new SegmentFile(file.getPath());
+				fail("expected an IOException");
+			} catch (IOException e) {
+			}
+		}
+		
+		Files.write(file.toPath(), new byte[] {'T', 'S', 'E', 'G'});
+		try {
+			new SegmentFile(file.getPath());
+			fail("expected an IOException");
+		} catch (IOException e) {
+		}
+	}
+	
+	/**
+	 * Helper method that clips a segment to a rectangle, to check whether any of it is inside.
+	 */
+	private static boolean crosses(SegmentStore segments, int i, double left, double bottom, double right, double top) {
+		double x0 = segments.startX(i);
+		double y0 = segments.startY(i);
+		double dx = segments.endX(i) - x0;
+		double dy = segments.endY(i) - y0;
+		double[] p = {-dx, dx, -dy, dy};
+		double[] q = {x0 - left, right - x0, y0 - bottom, top - y0};
+		double from = 0;
+		double to = 1;
+		for (int k = 0; k < 4; k++) {
+			if (p[k] == 0) {
+				if (q[k] < 0) {
+					return false;
+				}
+			} else if (p[k] < 0) {
+				from = Math.max(from, q[k] / p[k]);
+			} else {
+				to = Math.min(to, q[k] / p[k]);
+			}
+		}
+		return from <= to;
+	}
+	
+	private static double distance(SegmentStore segments, int i, double x, double y) {
+		double x0 = segments.startX(i);
+		double y0 = segments.startY(i);
+		double dx = segments.endX(i) - x0;
+		double dy = segments.endY(i) - y0;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy) / lengthSquared));
+		return Math.hypot(x0 + t * dx - x, y0 + t * dy - y);
+	}
+	
+	private static String toString(SegmentStore segments, int i) {
+		return "[(" + segments.startX(i) + "," + segments.startY(i) + ") (" + segments.endX(i) + ","
+				+ segments.endY(i) + ") " + segments.color(i) + "]";
+	}
+}
@@ -0,0 +1,287 @@
+/**
+ * This class checks a Turtle Graphics program for syntax errors and reports all of them at once, instead of stopping
+ * at the first one as TurtleParser does. Each error is returned as a Diagnostic, with the line and column of the token
+ * it is about, rather than printed.
+ *
+ * The grammar is the one checkCompactProgram() accepts, so a program has no diagnostics exactly when the parser
+ * accepts it, except for the few programs the parser accepts by silently dropping a statement: a loop with an empty
+ * body, an assignment of a keyword, or an assignment of a keyword to a variable, are always reported. Only acceptance
+ * is the same: the first diagnostic is not always the error the parser reports, since the parser reads a keyword where
+ * a statement starts as the name of a variable being assigned, and the validator does not. After an error the
+ * validator skips ahead to a token a statement can start with, or to a begin or end, and carries on from there, so
+ * that one mistake is reported once rather than causing errors in the rest of the program. A loop body that is missing
+ * its begin is treated as absent.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TurtleValidator {
+
+	private final ByteBuffer source;
+	private final int base;
+
+	private int count = 0;
+	private int[] starts = new int[64];
+	private int[] ends = new int[64];
+	private TokenType[] types = new TokenType[64];
+	private boolean[] tooLarge = new boolean[64];
+
+	private int next;
+	private List<Diagnostic> diagnostics;
+	private int[] lineStarts;
+
+	/**
+	 * Creates a new TurtleValidator object for a given file that contains a turtle program
+	 * @param file The file that contains the turtle program
+	 * @throws java.io.UncheckedIOException if the file cannot be read
+	 */
+	public TurtleValidator(String file) {
+		this(MappedTurtleLexer.map(file));
+	}
+
+	/**
+	 * Creates a new TurtleValidator object for the bytes between the position and the limit of the given buffer
+	 * @param source The turtle program
+	 */
+	public TurtleValidator(ByteBuffer source) {
+		this.source = source;
+		this.base = source.position();
+		MappedTurtleLexer lexer = new MappedTurtleLexer(source);
+		while (lexer.hasNext()) {
+			TokenType type = lexer.nextToken();
+			if (count == types.length) {
+				starts = Arrays.copyOf(starts, count * 2);
+				ends = Arrays.copyOf(ends, count * 2);
+				types = Arrays.copyOf(types, count * 2);
+				tooLarge = Arrays.copyOf(tooLarge, count * 2);
+			}
+			starts[count] = lexer.tokenStart();
+			ends[count] = lexer.tokenEnd();
+			types[count] = type;
+			if (type == TokenType.NUMBER) {
+				try {
+					lexer.tokenNumber();
+				} catch (NumberFormatException e) {
+					tooLarge[count] = true;
+				}
+			}
+			count++;
+		}
+	}
+
+	/**
+	 * Checks the whole program and returns every syntax error found, in the order they appear in the program.
+	 * @return The syntax errors, or an empty list if the program is valid
+	 */
+	public List<Diagnostic> validate() {
+		diagnostics = new ArrayList<Diagnostic>();
+		next = 0;
+
+		checkBlock(true);
+
+		if (next >= count || types[next] != TokenType.PROGRAM_END) {
+			error("Syntax Error: Missing programEnd statement.", next);
+		}
+		return diagnostics;
+	}
+
+	/**
+	 * Helper method that checks a block and moves past it.
+	 * @param program True if the block is the whole program, which is checked even if its begin is missing
+	 */
+	private void checkBlock(boolean program) {
+		if (next >= count || types[next] != TokenType.BEGIN) {
+			error("Syntax Error: Missing begin statement for program block.", next);
+			if (!program || next >= count) {
+				return;
+			}
+		} else {
+			next++;
+		}
+
+		int statements = 0;
+		while (true) {
+			if (next >= count || (types[next] == TokenType.PROGRAM_END && !startsAssignment(next))) {
+				error("Syntax Error: Missing end statement for program block.", next);
+				return;
+			}
+			if (types[next] == TokenType.END) {
+				if (statements == 0) {
+					error("Syntax Error: Block has no statements.", next);
+				}
+				next++;
+				return;
+			}
+			checkStatement();
+			statements++;
+		}
+	}
+
+	/**
+	 * Helper method that checks a statement and moves past it, or past the tokens skipped after an error in it.
+	 */
+	private void checkStatement() {
+		int first = next;
+		TokenType type = types[next];
+		if (startsAssignment(first)) {
+			checkAssignment();
+			return;
+		}
+		switch (type) {
+		case LOOP:
+			next++;
+			checkOperand();
+			checkBlock(false);
+			break;
+		case FORWARD:
+		case TURN:
+			next++;
+			checkOperand();
+			break;
+		case BEGIN:
+			// a block where a statement should be: check it, so that its end does not end the enclosing block
+			error("Syntax Error: Unexpected begin statement.", first);
+			checkBlock(false);
+			break;
+		default:
+			checkAssignment();
+		}
+	}
+
+	/**
+	 * Helper method that checks an assignment and moves past it.
+	 */
+	private void checkAssignment() {
+		if (!types[next].isWord()) {
+			error("Syntax Error: Invalid variable name \"" + text(next) + "\"", next);
+			next++;
+			synchronize();
+			return;
+		}
+		next++;
+
+		if (next >= count) {
+			return;
+		}
+		if (types[next] != TokenType.EQUALS) {
+			error("Syntax Error: Expected \"=\", but found \"" + text(next) + "\"", next);
+			synchronize();
+			return;
+		}
+		next++;
+
+		if (next >= count) {
+			return;
+		}
+		if (types[next] != TokenType.NUMBER || tooLarge[next]) {
+			error("Syntax Error: Invalid number \"" + text(next) + "\"", next);
+			if (!isSynchronizing(next)) {
+				next++;
+			}
+			synchronize();
+			return;
+		}
+		next++;
+	}
+
+	/**
+	 * Helper method that checks a distance, angle or count, which is a number or a variable, and moves past it.
+	 */
+	private void checkOperand() {
+		if (next >= count) {
+			return;
+		}
+		if ((types[next] == TokenType.NUMBER && !tooLarge[next]) || types[next].isWord()) {
+			next++;
+			return;
+		}
+		error("Syntax Error: Invalid number \"" + text(next) + "\"", next);
+		next++;
+		synchronize();
+	}
+
+	/**
+	 * Helper method that skips tokens until one that a statement, a block or the end of a block can start with.
+	 */
+	private void synchronize() {
+		while (next < count && !isSynchronizing(next)) {
+			next++;
+		}
+	}
+
+	private boolean isSynchronizing(int token) {
+		switch (types[token]) {
+		case LOOP:
+		case FORWARD:
+		case TURN:
+		case BEGIN:
+		case END:
+		case PROGRAM_END:
+			return true;
+		default:
+			return startsAssignment(token);
+		}
+	}
+
+	/**
+	 * Helper method that determines whether a token starts an assignment. Like checkCompactProgram(), this accepts
+	 * begin and programEnd as variable names, but not the keywords that start other statements or end a block.
+	 */
+	private boolean startsAssignment(int token) {
+		TokenType type = types[token];
+		return (type == TokenType.VARIABLE || type == TokenType.BEGIN || type == TokenType.PROGRAM_END)
+				&& token + 1 < count && types[token + 1] == TokenType.EQUALS;
+	}
+
+	private String text(int token) {
+		byte[] text = new byte[ends[token] - starts[token]];
+		for (int i = 0; i < text.length; i++) {
+			text[i] = source.get(starts[token] + i);
+		}
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Helper method that records a syntax error about a token, or about the end of the program.
+	 * @param message The message describing the error
+	 * @param token The index of the token, or the number of tokens for the end of the program
+	 */
+	private void error(String message, int token) {
+		int offset = token < count ? starts[token] : source.limit();
+		int length = token < count ? ends[token] - starts[token] : 0;
+		int line = line(offset);
+		int column = offset - lineStarts[line] + 1;
+		diagnostics.add(new Diagnostic(message, offset - base, length, line + 1, column));
+	}
+
+	/**
+	 * Helper method that finds the line an offset is on, counting from 0.
+	 */
+	private int line(int offset) {
+		if (lineStarts == null) {
+			int lines = 1;
+			int[] found = new int[16];
+			found[0] = base;
+			for (int i = base; i < source.limit(); i++) {
+				if (source.get(i) == '\n') {
+					if (lines == found.length) {
+						found = Arrays.copyOf(found, lines * 2);
+					}
+					found[lines++] = i + 1;
+				}
+			}
+			lineStarts = Arrays.copyOf(found, lines);
+		}
+		int line = Arrays.binarySearch(lineStarts, offset);
+		return line >= 0 ? line : -line - 2;
+	}
+}
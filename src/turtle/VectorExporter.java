@@ -0,0 +1,333 @@
+/**
+ * This class writes the line segments of a drawing to a vector file, either SVG or PostScript (EPS), for printing
+ * at any size. It is a SegmentSink, so a streaming DrawableTurtle can write its drawing as the program runs, and
+ * the whole drawing never has to be in memory.
+ *
+ * The file is written through one direct ByteBuffer that is reused for the whole file and handed to a FileChannel
+ * whenever it is nearly full. Coordinates are written to two decimal places by converting them to whole
+ * hundredths and writing the digits straight into the buffer, so writing a segment allocates nothing.
+ * Consecutive segments of the same color are written as one path, and a segment that starts where the previous
+ * one ended continues the path without moving the pen, so a long run of connected lines costs one path element
+ * and one point per segment. Segments are clipped to a large window around the canvas first, so that far-off
+ * segments are left out and the numbers written stay small.
+ *
+ * The picture is the same as in TurtleGUI: the turtle starts at the center of a canvas of the given size, with
+ * a stroke one unit wide along the center of each pixel.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class VectorExporter implements SegmentSink {
+
+	/**
+	 * The kinds of vector file that can be written.
+	 */
+	public enum Format {
+		SVG, POSTSCRIPT
+	}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	// more than the bytes written for one segment, including ending one path and starting the next
+	private static final int SEGMENT_BYTES = 256;
+	// how far outside the canvas, in pixels, segments are clipped
+	private static final double CLIP_MARGIN = 1e6;
+	// PostScript interpreters may limit the number of points in a path
+	private static final int MAX_POSTSCRIPT_PATH = 1000;
+
+	private static final PenColor[] COLORS = PenColor.values();
+	private static final byte[][] SVG_PATHS = new byte[COLORS.length][];
+	private static final byte[][] POSTSCRIPT_PATHS = new byte[COLORS.length][];
+	static {
+		for (PenColor color : COLORS) {
+			String hex = Integer.toHexString(0x1000000 | TurtleRenderer.rgb(color)).substring(1);
+			SVG_PATHS[color.ordinal()] = bytes("<path stroke=\"#" + hex + "\" d=\"");
+			POSTSCRIPT_PATHS[color.ordinal()] = bytes(component(color.color.getRed()) + " "
+					+ component(color.color.getGreen()) + " " + component(color.color.getBlue()) + " setrgbcolor newpath\n");
+		}
+	}
+	private static final byte[] SVG_END_PATH = bytes("\"/>\n");
+	private static final byte[] POSTSCRIPT_END_PATH = bytes("stroke\n");
+
+	private final Format format;
+	private final int width;
+	private final int height;
+	private final double originX;
+	private final double originY;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final byte[] digits = new byte[20];
+
+	// the color of the path being written, or null between paths
+	private PenColor pathColor = null;
+	private int pathSegments = 0;
+	// the point the path being written ends at, in hundredths
+	private long penX;
+	private long penY;
+	// the part of the segment being written that is inside the clipping window
+	private double from;
+	private double to;
+
+	/**
+	 * Creates a new VectorExporter object that writes a drawing to a file, replacing anything already in it.
+	 * The start of the file is written straight away, and the rest once close() is called.
+	 * @param file The file to write
+	 * @param format The kind of file to write
+	 * @param width The width of the canvas
+	 * @param height The height of the canvas
+	 * @throws IOException if the file cannot be opened
+	 */
+	public VectorExporter(String file, Format format, int width, int height) throws IOException {
+		this.format = format;
+		this.width = width;
+		this.height = height;
+		// the centers of the pixels the turtle's origin is drawn in by TurtleGUI and TurtleRenderer
+		this.originX = (width - 1) / 2 + 0.5;
+		this.originY = (height - 1) / 2 + 0.5;
+		this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		if (format == Format.SVG) {
+			put(bytes("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+					+ "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + width + "\" height=\"" + height
+					+ "\" viewBox=\"0 0 " + width + " " + height + "\">\n"
+					+ "<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n"
+					+ "<g fill=\"none\" stroke-width=\"1\" stroke-linecap=\"round\" stroke-linejoin=\"round\">\n"));
+		} else {
+			put(bytes("%!PS-Adobe-3.0 EPSF-3.0\n"
+					+ "%%BoundingBox: 0 0 " + width + " " + height + "\n"
+					+ "%%EndComments\n"
+					+ "/m {moveto} bind def\n/l {lineto} bind def\n"
+					+ "1 setlinewidth 1 setlinecap 1 setlinejoin\n"));
+		}
+	}
+
+	/**
+	 * Writes a whole drawing to a vector file.
+	 * @param segments The segments of the drawing
+	 * @param file The file to write
+	 * @param format The kind of file to write
+	 * @param width The width of the canvas
+	 * @param height The height of the canvas
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void export(SegmentStore segments, String file, Format format, int width, int height)
+			throws IOException {
+		VectorExporter exporter = new VectorExporter(file, format, width, height);
+		try {
+			exporter.accept(segments);
+		} catch (UncheckedIOException e) {
+			exporter.channel.close();
+			throw e.getCause();
+		}
+		try {
+			exporter.close();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Writes a batch of segments.
+	 * @throws UncheckedIOException if the file cannot be written
+	 */
+	@Override
+	public void accept(SegmentStore batch) {
+		int count = batch.size();
+		for (int i = 0; i < count; i++) {
+			writeSegment(batch.startX[i], batch.startY[i], batch.endX[i], batch.endY[i], batch.color(i));
+		}
+	}
+
+	/**
+	 * Writes the end of the file and closes it.
+	 * @throws UncheckedIOException if the file cannot be written
+	 */
+	@Override
+	public void close() {
+		endPath();
+		put(bytes(format == Format.SVG ? "</g>\n</svg>\n" : "showpage\n%%EOF\n"));
+		try {
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Helper method that writes one segment, given in turtle coordinates, as part of the current path if it has
+	 * the same color.
+	 */
+	private void writeSegment(double startX, double startY, double endX, double endY, PenColor color) {
+		// canvas coordinates, with y increasing downwards in SVG and upwards in PostScript
+		double x0 = originX + startX;
+		double x1 = originX + endX;
+		double y0 = format == Format.SVG ? originY - startY : height - originY + startY;
+		double y1 = format == Format.SVG ? originY - endY : height - originY + endY;
+
+		// clip the segment to the window, keeping the part between the fractions from and to
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		from = 0;
+		to = 1;
+		if (!clip(-dx, x0 + CLIP_MARGIN) || !clip(dx, width + CLIP_MARGIN - x0)
+				|| !clip(-dy, y0 + CLIP_MARGIN) || !clip(dy, height + CLIP_MARGIN - y0) || from > to) {
+			return;
+		}
+		long fromX = Math.round((from == 0 ? x0 : x0 + dx * from) * 100);
+		long fromY = Math.round((from == 0 ? y0 : y0 + dy * from) * 100);
+		long toX = Math.round((to == 1 ? x1 : x0 + dx * to) * 100);
+		long toY = Math.round((to == 1 ? y1 : y0 + dy * to) * 100);
+
+		if (buffer.remaining() < SEGMENT_BYTES) {
+			flushUnchecked();
+		}
+		if (color != pathColor || (format == Format.POSTSCRIPT && pathSegments == MAX_POSTSCRIPT_PATH)) {
+			endPath();
+			buffer.put(format == Format.SVG ? SVG_PATHS[color.ordinal()] : POSTSCRIPT_PATHS[color.ordinal()]);
+			pathColor = color;
+		}
+		boolean move = pathSegments == 0 || fromX != penX || fromY != penY;
+		if (format == Format.SVG) {
+			if (move) {
+				buffer.put((byte) 'M');
+				putPoint(fromX, fromY);
+			}
+			buffer.put((byte) 'L');
+			putPoint(toX, toY);
+		} else {
+			if (move) {
+				putPoint(fromX, fromY);
+				buffer.put((byte) ' ').put((byte) 'm').put((byte) ' ');
+			}
+			putPoint(toX, toY);
+			buffer.put((byte) ' ').put((byte) 'l').put((byte) '\n');
+		}
+		penX = toX;
+		penY = toY;
+		pathSegments++;
+	}
+
+	/**
+	 * Helper method that clips the segment being written against one edge of the window, narrowing the part of
+	 * it that is kept, in the style of Liang and Barsky.
+	 * @param p How fast the segment moves towards the outside of the edge
+	 * @param q How far inside the edge the segment starts
+	 * @return False if the segment is entirely outside the edge
+	 */
+	private boolean clip(double p, double q) {
+		if (p == 0) {
+			return q >= 0;
+		} else if (p < 0) {
+			from = Math.max(from, q / p);
+		} else {
+			to = Math.min(to, q / p);
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method that ends the path being written, if there is one.
+	 */
+	private void endPath() {
+		if (pathColor != null) {
+			put(format == Format.SVG ? SVG_END_PATH : POSTSCRIPT_END_PATH);
+			pathColor = null;
+			pathSegments = 0;
+		}
+	}
+
+	/**
+	 * Helper method that writes a point as two numbers separated by a space.
+	 */
+	private void putPoint(long x, long y) {
+		putNumber(x);
+		buffer.put((byte) ' ');
+		putNumber(y);
+	}
+
+	/**
+	 * Helper method that writes a number given in hundredths, with as few decimal places as it needs.
+	 * @param hundredths The number times 100
+	 */
+	private void putNumber(long hundredths) {
+		if (hundredths < 0) {
+			buffer.put((byte) '-');
+			hundredths = -hundredths;
+		}
+		long whole = hundredths / 100;
+		int fraction = (int) (hundredths % 100);
+		int count = 0;
+		do {
+			digits[count++] = (byte) ('0' + whole % 10);
+			whole /= 10;
+		} while (whole > 0);
+		while (count > 0) {
+			buffer.put(digits[--count]);
+		}
+		if (fraction != 0) {
+			buffer.put((byte) '.');
+			buffer.put((byte) ('0' + fraction / 10));
+			if (fraction % 10 != 0) {
+				buffer.put((byte) ('0' + fraction % 10));
+			}
+		}
+	}
+
+	/**
+	 * Helper method that writes some bytes, making room in the buffer for them first.
+	 */
+	private void put(byte[] bytes) {
+		for (int written = 0; written < bytes.length; ) {
+			if (!buffer.hasRemaining()) {
+				flushUnchecked();
+			}
+			int length = Math.min(buffer.remaining(), bytes.length - written);
+			buffer.put(bytes, written, length);
+			written += length;
+		}
+	}
+
+	/**
+	 * Helper method that writes everything in the buffer to the file and empties it.
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private void flushUnchecked() {
+		try {
+			flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Helper method that writes a color component between 0 and 255 as a PostScript number between 0 and 1.
+	 */
+	private static String component(int value) {
+		return Double.toString(Math.round(value / 255.0 * 1000) / 1000.0);
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * This class is the part of a turtle's drawing that is shown on a canvas: which point of the drawing is at the
+ * origin pixel of the canvas, and how many pixels a step of the turtle takes up. It converts between the
+ * coordinates of the drawing, in which y increases upwards, and the pixels of the canvas, in which y increases
+ * downwards. A new Viewport shows the drawing the way TurtleGUI always has: the turtle's starting point at the
+ * center of the canvas, one pixel per step.
+ *
+ * @author Patrick Liem
+ *
+ */
+
+package turtle;
+
+public class Viewport {
+
+	/** The smallest number of pixels a step may take up */
+	static final double MIN_SCALE = 1e-6;
+	/** The largest number of pixels a step may take up */
+	static final double MAX_SCALE = 1e6;
+
+	private final int width;
+	private final int height;
+	private final int originX;
+	private final int originY;
+
+	private double centerX = 0;
+	private double centerY = 0;
+	private double scale = 1;
+
+	/**
+	 * Creates a new Viewport object for a canvas of the given size, showing the drawing at one pixel per step
+	 * with the turtle's starting point at the center
+	 * @param width The width of the canvas in pixels
+	 * @param height The height of the canvas in pixels
+	 */
+	public Viewport(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.originX = (width - 1) / 2;
+		this.originY = (height - 1) / 2;
+	}
+
+	public double toScreenX(double x) {
+		return originX + (x - centerX) * scale;
+	}
+
+	public double toScreenY(double y) {
+		return originY - (y - centerY) * scale;
+	}
+
+	public double toDrawingX(double screenX) {
+		return centerX + (screenX - originX) / scale;
+	}
+
+	public double toDrawingY(double screenY) {
+		return centerY - (screenY - originY) / scale;
+	}
+
+	/**
+	 * @return The number of pixels a step of the turtle takes up
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+	/**
+	 * @return The smallest x-coordinate of the drawing that is on the canvas
+	 */
+	public double getLeft() {
+		return toDrawingX(-1);
+	}
+
+	/**
+	 * @return The smallest y-coordinate of the drawing that is on the canvas
+	 */
+	public double getBottom() {
+		return toDrawingY(height + 1);
+	}
+
+	/**
+	 * @return The largest x-coordinate of the drawing that is on the canvas
+	 */
+	public double getRight() {
+		return toDrawingX(width + 1);
+	}
+
+	/**
+	 * @return The largest y-coordinate of the drawing that is on the canvas
+	 */
+	public double getTop() {
+		return toDrawingY(-1);
+	}
+
+	/**
+	 * Moves the drawing across the canvas.
+	 * @param dx The number of pixels to move the drawing to the right
+	 * @param dy The number of pixels to move the drawing down
+	 */
+	public void pan(double dx, double dy) {
+		centerX -= dx / scale;
+		centerY += dy / scale;
+	}
+
+	/**
+	 * Zooms in or out, keeping the point of the drawing under a pixel of the canvas where it is.
+	 * @param factor How many times larger the drawing should appear, less than 1 to zoom out
+	 * @param screenX The x-coordinate of the pixel that stays still
+	 * @param screenY The y-coordinate of the pixel that stays still
+	 */
+	public void zoom(double factor, double screenX, double screenY) {
+		double x = toDrawingX(screenX);
+		double y = toDrawingY(screenY);
+		scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+		centerX = x - (screenX - originX) / scale;
+		centerY = y + (screenY - originY) / scale;
+	}
+
+	/**
+	 * Shows the whole of a rectangle of the drawing, as large as it fits on the canvas with a small margin.
+	 * @param left The smallest x-coordinate of the rectangle
+	 * @param bottom The smallest y-coordinate of the rectangle
+	 * @param right The largest x-coordinate of the rectangle
+	 * @param top The largest y-coordinate of the rectangle
+	 */
+	public void fit(double left, double bottom, double right, double top) {
+		centerX = (left + right) / 2;
+		centerY = (bottom + top) / 2;
+		double fitWidth = (width - 1) * 0.95 / Math.max(right - left, 1e-9);
+		double fitHeight = (height - 1) * 0.95 / Math.max(top - bottom, 1e-9);
+		scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, Math.min(fitWidth, fitHeight)));
+	}
+
+	/**
+	 * Goes back to showing the drawing at one pixel per step, with the turtle's starting point at the center.
+	 */
+	public void reset() {
+		centerX = 0;
+		centerY = 0;
+		scale = 1;
+	}
+}